@@ -0,0 +1,72 @@
+package com.rosan.app_process;
+
+import static org.junit.Assert.assertTrue;
+
+import android.os.Binder;
+import android.os.Debug;
+import android.os.Parcel;
+import android.util.Log;
+
+import org.junit.Test;
+
+/*
+ * 统计句柄方式转发每次调用分配的对象数；ProcessManager在本进程中创建，
+ * Binder.transact直接调用onTransact，因此计数同时包含客户端与ProcessManager两侧
+ * */
+public class ForwardAllocationBenchmark {
+    private static final String TAG = "ForwardAllocation";
+
+    private static final int WARMUP = 1000;
+
+    private static final int ITERATIONS = 10000;
+
+    private static final int PAYLOAD_BYTES = 64 * 1024;
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void handleTransactAllocations() throws Exception {
+        ProcessManager manager = new ProcessManager();
+        Binder target = new Binder() {
+            @Override
+            protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) {
+                reply.writeInt(data.dataSize());
+                return true;
+            }
+        };
+        int handle = manager.registerBinder(new ParcelableBinder(target));
+        BinderRegistry registry = BinderRegistry.of(manager);
+        byte[] payload = new byte[PAYLOAD_BYTES];
+
+        Parcel data = Parcel.obtain();
+        Parcel reply = Parcel.obtain();
+        try {
+            data.writeByteArray(payload);
+            for (int i = 0; i < WARMUP; i++) {
+                transact(registry, handle, data, reply);
+            }
+
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocCount();
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                transact(registry, handle, data, reply);
+            }
+            long nanos = System.nanoTime() - start;
+            int allocations = Debug.getThreadAllocCount();
+            Debug.stopAllocCounting();
+
+            double perCall = (double) allocations / ITERATIONS;
+            Log.i(TAG, "allocations per call: " + perCall + ", avg: " + nanos / ITERATIONS + "ns");
+            assertTrue("allocations per call: " + perCall, perCall < 1);
+        } finally {
+            data.recycle();
+            reply.recycle();
+            manager.unregisterBinders(new int[]{handle});
+        }
+    }
+
+    private static void transact(BinderRegistry registry, int handle, Parcel data, Parcel reply) {
+        reply.setDataSize(0);
+        assertTrue(AppProcess.remoteTransact(registry, handle, 1, data, reply, 0));
+    }
+}
@@ -0,0 +1,54 @@
+package com.rosan.app_process;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import android.os.Parcel;
+
+import org.junit.Test;
+
+public class ParcelSpillTest {
+    @Test
+    public void writeAndReadRoundTrip() {
+        assumeTrue(ParcelSpill.isSupported());
+        byte[] payload = new byte[512 * 1024];
+        for (int i = 0; i < payload.length; i++) payload[i] = (byte) i;
+
+        Parcel source = Parcel.obtain();
+        Parcel spilled = Parcel.obtain();
+        Parcel restored = Parcel.obtain();
+        try {
+            source.writeInt(42);
+            source.writeByteArray(payload);
+            ParcelSpill.write(ParcelSpill.marshall(source), spilled);
+            spilled.setDataPosition(0);
+            ParcelSpill.read(spilled, restored);
+            assertEquals(42, restored.readInt());
+            assertArrayEquals(payload, restored.createByteArray());
+        } finally {
+            source.recycle();
+            spilled.recycle();
+            restored.recycle();
+        }
+    }
+
+    @Test
+    public void spillReplyRoundTrip() {
+        assumeTrue(ParcelSpill.isSupported());
+        byte[] payload = new byte[512 * 1024];
+        Parcel reply = Parcel.obtain();
+        try {
+            reply.writeNoException();
+            reply.writeByteArray(payload);
+            int size = reply.dataSize();
+            ParcelSpill.spillReply(reply, 256 * 1024, 7);
+            ParcelSpill.unspillReply(reply, 7);
+            assertEquals(size, reply.dataSize());
+            reply.readException();
+            assertArrayEquals(payload, reply.createByteArray());
+        } finally {
+            reply.recycle();
+        }
+    }
+}
@@ -4,31 +4,96 @@ import android.app.ActivityThread;
 import android.content.ComponentName;
 import android.content.Context;
 import android.os.Binder;
+import android.os.DeadObjectException;
 import android.os.IBinder;
 import android.os.Parcel;
+import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public abstract class AppProcess implements Closeable {
     protected Context mContext = null;
 
-    protected IProcessManager mManager = null;
+    protected volatile IProcessManager mManager = null;
 
-    protected final Map<String, IBinder> mChildProcess = new HashMap<>();
+    private ManagerStandby mStandby = null;
+
+    private ManagerStandby mSpares = null;
+
+    private boolean mSlimClassPath = true;
+
+    private final Map<String, Placement> mPlacements = new HashMap<>();
+
+    private Placement mDefaultPlacement = Placement.ISOLATED;
+
+    private final InFlightRegistry<IProcessManager> mGroupHosts = new InFlightRegistry<>(IProcessManager::asBinder);
+
+    private Handshake mHandshake = Handshake.PROVIDER;
+
+    private volatile int mBinderThreads = 0;
+
+    public static int DEFAULT_ASYNC_PARALLELISM = 4;
+
+    // exec(cmdList)中stdout与stderr各自保留的最大字节数
+    public static int DEFAULT_EXEC_OUTPUT_BYTES = 256 * 1024;
+
+    // 通过BinderWrapper调用时，data或返回数据超过该大小（字节）则通过SharedMemory传递，0为关闭，需要Android 8.1及以上
+    public static int SPILL_THRESHOLD = 256 * 1024;
+
+    private static final Random sSpillNonce = new Random();
+
+    private ExecutorService mAsyncExecutor = null;
+
+    private volatile long mSpawnTimeoutMillis = 15 * 1000;
+
+    private final Map<String, StartupReport> mStartupReports = new HashMap<>();
+
+    private volatile StartupReport.Listener mStartupReportListener = null;
+
+    private TransactCache mTransactCache = null;
+
+    private TransactSingleFlight mSingleFlight = null;
+
+    private volatile ManagerPool mPool = null;
+
+    private volatile boolean mAutoReconnect = false;
+
+    private boolean mReconnecting = false;
+
+    private final TransactRules<Boolean> mIdempotent = new TransactRules<>();
+
+    // 自动重连时重新启动ProcessManager的最多次数，每次失败后等待的时间递增
+    public static int RECONNECT_ATTEMPTS = 5;
+
+    public static long RECONNECT_BACKOFF_MILLIS = 1000;
+
+    // 幂等调用因ProcessManager死亡而失败时的最多重试次数
+    public static int IDEMPOTENT_RETRIES = 2;
+
+    private final InFlightRegistry<IBinder> mChildProcess = new InFlightRegistry<>(binder -> binder);
 
     public static ProcessParams generateProcessParams(@NonNull String classPath, @NonNull String entryClassName, @NonNull List<String> args) {
         List<String> cmdList = new ArrayList<>();
@@ -50,26 +115,173 @@ public abstract class AppProcess implements Closeable {
     }
 
     public static IBinder binderWrapper(IProcessManager manager, IBinder binder) {
-        return new BinderWrapper(manager, binder);
+        return BinderRegistry.of(manager).wrapper(binder);
     }
 
+    /*
+     * FLAG_ONEWAY会同时用于与ProcessManager的通信，调用方不会等待转发完成；
+     * 同一Binder上的oneway调用由驱动依次派发，ProcessManager按收到的顺序转发，因此同一目标的顺序不变
+     * */
     public static boolean remoteTransact(IProcessManager manager, IBinder binder, int code, Parcel data, Parcel reply, int flags) {
         IBinder managerBinder = manager.asBinder();
         Parcel processData = Parcel.obtain();
         try {
-            processData.writeInterfaceToken(Objects.requireNonNull(managerBinder.getInterfaceDescriptor()));
+            processData.writeInterfaceToken(BinderRegistry.of(manager).getDescriptor());
             processData.writeStrongBinder(binder);
             processData.writeInt(code);
             processData.writeInt(flags);
             processData.appendFrom(data, 0, data.dataSize());
-            return managerBinder.transact(IBinder.FIRST_CALL_TRANSACTION + 2, processData, reply, 0);
+            return managerBinder.transact(IBinder.FIRST_CALL_TRANSACTION + 2, processData, reply, flags & IBinder.FLAG_ONEWAY);
+        } catch (RemoteException e) {
+            throw new RuntimeException(e);
+        } finally {
+            processData.recycle();
+        }
+    }
+
+    /*
+     * 通过已注册的句柄transact，无需再传递目标Binder；
+     * 接口标识与句柄等信息作为尾部追加到调用方的data之后，而不是复制data，调用结束后恢复data原本的大小与位置；
+     * data或返回数据超过SPILL_THRESHOLD时通过SharedMemory传递
+     * */
+    static boolean remoteTransact(BinderRegistry registry, int handle, int code, Parcel data, Parcel reply, int flags) {
+        IBinder managerBinder = registry.getManager().asBinder();
+        int size = data.dataSize();
+        int position = data.dataPosition();
+        int threshold = ParcelSpill.isSupported() ? SPILL_THRESHOLD : 0;
+        // nonce用于识别ProcessManager写入的返回数据（转存内容或句柄失效）
+        int nonce = reply != null ? sSpillNonce.nextInt() | 1 : 0;
+        byte[] spilled = threshold > 0 && size > threshold ? ParcelSpill.marshall(data) : null;
+        Parcel processData = data;
+        try {
+            if (spilled != null) {
+                processData = Parcel.obtain();
+                ParcelSpill.write(spilled, processData);
+            }
+            int payloadSize = processData.dataSize();
+            processData.setDataPosition(payloadSize);
+            processData.writeInterfaceToken(registry.getDescriptor());
+            processData.writeInt(handle);
+            processData.writeInt(code);
+            processData.writeInt(flags);
+            processData.writeInt(nonce != 0 ? threshold : 0);
+            processData.writeInt(nonce);
+            processData.writeInt(payloadSize);
+            processData.writeInt(spilled != null ? ProcessManager.TRAILER_MAGIC_SPILLED : ProcessManager.TRAILER_MAGIC);
+            boolean result = managerBinder.transact(IBinder.FIRST_CALL_TRANSACTION + 9, processData, reply, flags & IBinder.FLAG_ONEWAY);
+            if (nonce != 0) {
+                if (isStaleHandleReply(reply, nonce)) throw new StaleHandleException(handle);
+                ParcelSpill.unspillReply(reply, nonce);
+            }
+            return result;
+        } catch (RemoteException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (processData != data) processData.recycle();
+            data.setDataSize(size);
+            data.setDataPosition(position);
+        }
+    }
+
+    private static boolean isStaleHandleReply(@NonNull Parcel reply, int nonce) {
+        if (reply.dataSize() != 8) return false;
+        reply.setDataPosition(0);
+        boolean stale = reply.readInt() == ProcessManager.REPLY_STALE_HANDLE && reply.readInt() == nonce;
+        reply.setDataPosition(0);
+        return stale;
+    }
+
+    /*
+     * 在一次与ProcessManager的通信中依次执行多个transact，结果写回各自的Transaction
+     * */
+    public static void remoteTransactBatch(IProcessManager manager, List<Transaction> transactions) {
+        IBinder managerBinder = manager.asBinder();
+        Parcel processData = Parcel.obtain();
+        Parcel processReply = Parcel.obtain();
+        try {
+            processData.writeInterfaceToken(BinderRegistry.of(manager).getDescriptor());
+            processData.writeInt(transactions.size());
+            for (Transaction transaction : transactions) {
+                Parcel data = transaction.getData();
+                // binderWrapper返回的Binder直接换成目标，避免在ProcessManager中再转发一次
+                processData.writeStrongBinder(BinderRegistry.unwrap(transaction.getBinder()));
+                processData.writeInt(transaction.getCode());
+                processData.writeInt(transaction.getFlags());
+                processData.writeInt(data.dataSize());
+                processData.appendFrom(data, 0, data.dataSize());
+            }
+            managerBinder.transact(IBinder.FIRST_CALL_TRANSACTION + 6, processData, processReply, 0);
+            for (Transaction transaction : transactions) {
+                int status = processReply.readInt();
+                int size = processReply.readInt();
+                int position = processReply.dataPosition();
+                Parcel reply = transaction.getReply();
+                if (reply != null && size > 0) {
+                    reply.appendFrom(processReply, position, size);
+                    reply.setDataPosition(0);
+                }
+                processReply.setDataPosition(position + size);
+                transaction.mResult = status == ProcessManager.BATCH_STATUS_TRUE;
+                transaction.mError = status == ProcessManager.BATCH_STATUS_ERROR ? processReply.readString() : null;
+            }
+        } catch (RemoteException e) {
+            throw new RuntimeException(e);
+        } finally {
+            processData.recycle();
+            processReply.recycle();
+        }
+    }
+
+    /*
+     * 在ProcessManager中执行整段TransactProgram，只需一次通信
+     * */
+    public static TransactProgram.Result remoteTransactProgram(IProcessManager manager, TransactProgram program) {
+        IBinder managerBinder = manager.asBinder();
+        Parcel processData = Parcel.obtain();
+        Parcel processReply = Parcel.obtain();
+        try {
+            processData.writeInterfaceToken(BinderRegistry.of(manager).getDescriptor());
+            program.writeToParcel(processData);
+            managerBinder.transact(IBinder.FIRST_CALL_TRANSACTION + 10, processData, processReply, 0);
+            return TransactProgram.readResult(processReply);
         } catch (RemoteException e) {
             throw new RuntimeException(e);
         } finally {
             processData.recycle();
+            processReply.recycle();
         }
     }
 
+    /*
+     * 以oneway方式发出transact并立即返回，ProcessManager执行后通过回调Binder回传结果，
+     * 多个调用可同时在途而无需各占一个客户端线程；Future的结果为返回数据，使用后需recycle；
+     * 经由同一ProcessManager发往同一目标的调用按发出的顺序执行，不同目标之间并行且不保证顺序
+     * */
+    public static Future<Parcel> remoteTransactAsync(IProcessManager manager, IBinder binder, int code, Parcel data, int flags, @Nullable Callback<Parcel> callback) {
+        binder = BinderRegistry.unwrap(binder);
+        BinderRegistry registry = BinderRegistry.of(manager);
+        AsyncReplies replies = registry.getReplies();
+        CallbackFuture<Parcel> future = new CallbackFuture<>(callback);
+        int id = replies.add(future);
+        Parcel processData = Parcel.obtain();
+        try {
+            processData.writeInterfaceToken(registry.getDescriptor());
+            processData.writeStrongBinder(replies);
+            processData.writeInt(id);
+            processData.writeStrongBinder(binder);
+            processData.writeInt(code);
+            processData.writeInt(flags & ~IBinder.FLAG_ONEWAY);
+            processData.appendFrom(data, 0, data.dataSize());
+            manager.asBinder().transact(IBinder.FIRST_CALL_TRANSACTION + 11, processData, null, IBinder.FLAG_ONEWAY);
+        } catch (RemoteException | RuntimeException e) {
+            replies.remove(id);
+            future.completeExceptionally(e);
+        } finally {
+            processData.recycle();
+        }
+        return future;
+    }
+
     public static void linkDeathToThis(IProcessManager serviceManager) {
         IClientManager clientManager = new ClientManager();
         linkDeathTo(serviceManager, clientManager.asBinder());
@@ -108,26 +320,258 @@ public abstract class AppProcess implements Closeable {
         if (initialized()) return true;
         mContext = context;
 
-        IProcessManager manager = newManager();
+        IProcessManager manager = mStandby != null ? mStandby.take() : null;
+        if (manager == null) manager = newManager();
         if (manager == null) return false;
-        mManager = manager;
+        attachManager(manager);
+        return initialized();
+    }
+
+    /*
+     * 预启动模式：在后台保持一个已完成初始化的备用ProcessManager，
+     * init()或当前ProcessManager死亡时直接接管，随后继续启动下一个备用进程
+     * */
+    public synchronized void prefork(@NonNull Context context) {
+        if (mContext == null) mContext = context;
+        if (mStandby == null) mStandby = new ManagerStandby(this::newManager, 1);
+        mStandby.fill();
+    }
+
+    public synchronized boolean isPrefork() {
+        return mStandby != null;
+    }
+
+    /*
+     * fork server模式：预先启动spareCount个已完成虚拟机与系统Context初始化的空闲进程，
+     * isolatedServiceBinder时只需让其中一个进程实例化组件，无需再经历完整的启动过程；
+     * 初始化完成后，空闲进程由已有的ProcessManager启动，不再需要su
+     * */
+    public synchronized void forkServer(@NonNull Context context, int spareCount) {
+        if (mSpares != null) {
+            mSpares.close();
+            mSpares = null;
+        }
+        if (spareCount <= 0) return;
+        if (mContext == null) mContext = context;
+        mSpares = new ManagerStandby(this::newManager, spareCount);
+        mSpares.fill();
+    }
 
+    public synchronized boolean isForkServer() {
+        return mSpares != null;
+    }
+
+    private synchronized void attachManager(@NonNull IProcessManager manager) {
+        mManager = manager;
+        notifyAll();
+        applyRegistrySettings(manager);
+        if (mPool != null) mPool.add(manager, false);
         try {
-            manager.asBinder().linkToDeath(() -> {
-                if (manager.asBinder() != mManager.asBinder()) return;
-                mManager = null;
-            }, 0);
+            manager.asBinder().linkToDeath(() -> onManagerDied(manager), 0);
         } catch (RemoteException e) {
             e.printStackTrace();
         }
-        return initialized();
+    }
+
+    private synchronized void applyRegistrySettings(@NonNull IProcessManager manager) {
+        if (mTransactCache != null) BinderRegistry.of(manager).setCache(mTransactCache);
+        if (mSingleFlight != null) BinderRegistry.of(manager).setSingleFlight(mSingleFlight);
+    }
+
+    /*
+     * 连接池模式：共启动size个同模式的ProcessManager（包括当前的），
+     * binderWrapper、remoteTransact、remoteProcess、exec与serviceBinder按policy分散到其中，size不大于1时关闭
+     * */
+    public void pool(int size, @NonNull PoolPolicy policy) {
+        IProcessManager primary = requireManager();
+        ManagerPool previous;
+        synchronized (this) {
+            previous = mPool;
+            mPool = null;
+        }
+        if (previous != null) exitAll(previous.clear());
+        if (size <= 1) return;
+        ManagerPool pool = new ManagerPool(policy);
+        pool.add(primary, false);
+        List<Future<IProcessManager>> spawns = new ArrayList<>();
+        for (int i = 1; i < size; i++) {
+            spawns.add(submitAsync(this::newManager, null));
+        }
+        for (Future<IProcessManager> spawn : spawns) {
+            try {
+                IProcessManager manager = spawn.get();
+                if (manager == null) continue;
+                applyRegistrySettings(manager);
+                pool.add(manager, true);
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exitAll(pool.clear());
+                return;
+            }
+        }
+        synchronized (this) {
+            mPool = pool;
+        }
+    }
+
+    public @Nullable PoolStats poolStats() {
+        ManagerPool pool = mPool;
+        return pool != null ? pool.stats() : null;
+    }
+
+    private static void exitAll(@NonNull List<IProcessManager> managers) {
+        for (IProcessManager manager : managers) {
+            try {
+                manager.exit(0);
+            } catch (RemoteException | RuntimeException ignored) {
+            }
+            BinderRegistry.remove(manager);
+        }
+    }
+
+    interface PoolCall<T> {
+        T call(@NonNull IProcessManager manager) throws RemoteException;
+    }
+
+    /*
+     * 连接池模式下由连接池选择ProcessManager，否则使用当前的ProcessManager
+     * */
+    <T> T dispatch(@Nullable IBinder key, @NonNull PoolCall<T> call) {
+        return dispatch(key, null, 0, call);
+    }
+
+    /*
+     * target不为null时，若(target, code)已通过setIdempotent登记，则在ProcessManager死亡导致失败后重试
+     * */
+    <T> T dispatch(@Nullable IBinder key, @Nullable IBinder target, int code, @NonNull PoolCall<T> call) {
+        for (int attempt = 0; ; attempt++) {
+            ManagerPool pool = mPool;
+            ManagerPool.Worker worker = pool != null ? pool.acquire(key) : null;
+            try {
+                return call.call(worker != null ? worker.mManager : requireManager());
+            } catch (RemoteException | RuntimeException e) {
+                boolean retry = mAutoReconnect && target != null && attempt < IDEMPOTENT_RETRIES
+                        && isDeadObject(e) && isIdempotent(target, code);
+                if (!retry) {
+                    if (e instanceof RuntimeException) throw (RuntimeException) e;
+                    throw new RuntimeException(e);
+                }
+            } finally {
+                if (worker != null) pool.release(worker);
+            }
+        }
+    }
+
+    private void onManagerDied(@NonNull IProcessManager manager) {
+        synchronized (this) {
+            if (mManager == null || manager.asBinder() != mManager.asBinder()) return;
+            mManager = null;
+            notifyAll();
+            if (mContext == null || (mStandby == null && !mAutoReconnect)) return;
+            mReconnecting = true;
+        }
+        new Thread(this::reconnect, "AppProcessFailover").start();
+    }
+
+    /*
+     * 优先接管备用进程，开启自动重连时在没有备用进程的情况下重新启动，失败后按递增的间隔重试
+     * */
+    private void reconnect() {
+        IProcessManager next = null;
+        try {
+            for (int attempt = 1; next == null && attempt <= RECONNECT_ATTEMPTS; attempt++) {
+                ManagerStandby standby;
+                boolean autoReconnect;
+                synchronized (this) {
+                    if (mContext == null || mManager != null) return;
+                    standby = mStandby;
+                    autoReconnect = mAutoReconnect;
+                }
+                if (standby != null) next = standby.take();
+                if (next == null && autoReconnect) next = newManager();
+                if (next == null && !autoReconnect) return;
+                if (next == null) Thread.sleep(RECONNECT_BACKOFF_MILLIS * attempt);
+            }
+            if (next == null) return;
+            synchronized (this) {
+                if (mContext != null && mManager == null) {
+                    attachManager(next);
+                    return;
+                }
+            }
+            try {
+                next.exit(0);
+            } catch (RemoteException | RuntimeException ignored) {
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                mReconnecting = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /*
+     * 自动重连：ProcessManager死亡后在后台重新启动，期间的调用会等待重连完成（最长为启动超时时间），
+     * 通过setIdempotent登记的调用因ProcessManager死亡而失败时会在重连后重试；
+     * 开启后binderWrapper返回的Binder会在重连后自动使用新的ProcessManager
+     * */
+    public AppProcess setAutoReconnect(boolean enabled) {
+        mAutoReconnect = enabled;
+        return this;
+    }
+
+    public boolean isAutoReconnect() {
+        return mAutoReconnect;
+    }
+
+    public AppProcess setIdempotent(@NonNull String descriptor, int code) {
+        mIdempotent.put(descriptor, code, true);
+        return this;
+    }
+
+    private boolean isIdempotent(@NonNull IBinder binder, int code) {
+        if (mIdempotent.isEmpty()) return false;
+        try {
+            return mIdempotent.get(binder.getInterfaceDescriptor(), code) != null;
+        } catch (RemoteException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static boolean isDeadObject(@Nullable Throwable throwable) {
+        for (; throwable != null; throwable = throwable.getCause()) {
+            if (throwable instanceof DeadObjectException) return true;
+        }
+        return false;
+    }
+
+    private synchronized @NonNull IProcessManager awaitManager() {
+        long deadline = SystemClock.elapsedRealtime() + mSpawnTimeoutMillis;
+        // mManager不为null但已死亡时，死亡通知尚未送达
+        while (!initialized() && mContext != null && (mReconnecting || mManager != null)) {
+            long remaining = deadline - SystemClock.elapsedRealtime();
+            if (remaining <= 0) break;
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!initialized()) throw new IllegalStateException("please call init() first.");
+        return mManager;
     }
 
     /*
      * 启动一个新的Process，并返回一个Android的IBinder，方便进行远程进程管理
      * */
     protected @Nullable IProcessManager newManager() {
-        IBinder binder = isolatedServiceBinder(new ComponentName(mContext.getPackageName(), ProcessManager.class.getName()));
+        IBinder binder = NewProcessReceiver.start(mContext, this, new ComponentName(mContext.getPackageName(), ProcessManager.class.getName()));
         if (binder == null) return null;
 
         IProcessManager serviceManager = IProcessManager.Stub.asInterface(binder);
@@ -135,16 +579,83 @@ public abstract class AppProcess implements Closeable {
         return serviceManager;
     }
 
+    /*
+     * 子进程将Binder交还给客户端的方式，PROVIDER失败时子进程会自动回退到BROADCAST
+     * */
+    public AppProcess setHandshake(@NonNull Handshake handshake) {
+        mHandshake = handshake;
+        return this;
+    }
+
+    public @NonNull Handshake getHandshake() {
+        return mHandshake;
+    }
+
+    /*
+     * 之后启动的子进程的Binder线程数上限，0为使用系统默认值
+     * */
+    public AppProcess setBinderThreads(int threads) {
+        mBinderThreads = threads;
+        return this;
+    }
+
+    public int getBinderThreads() {
+        return mBinderThreads;
+    }
+
+    /*
+     * 每次启动子进程后都会回调，可用于记录与统计冷启动耗时
+     * */
+    public AppProcess setStartupReportListener(@Nullable StartupReport.Listener listener) {
+        mStartupReportListener = listener;
+        return this;
+    }
+
+    /*
+     * 获取该组件最近一次启动的各阶段耗时
+     * */
+    public @Nullable StartupReport getStartupReport(@NonNull ComponentName componentName) {
+        synchronized (mStartupReports) {
+            return mStartupReports.get(componentName.flattenToString());
+        }
+    }
+
+    void onStartupReport(@NonNull StartupReport report) {
+        synchronized (mStartupReports) {
+            mStartupReports.put(report.getComponent(), report);
+        }
+        StartupReport.Listener listener = mStartupReportListener;
+        if (listener != null) listener.onStartupReport(report);
+    }
+
     public boolean initialized() {
         return mContext != null && mManager != null && mManager.asBinder().isBinderAlive();
     }
 
     @Override
     public void close() {
+        ManagerStandby standby;
+        ManagerStandby spares;
+        ManagerPool pool;
+        synchronized (this) {
+            standby = mStandby;
+            mStandby = null;
+            spares = mSpares;
+            mSpares = null;
+            pool = mPool;
+            mPool = null;
+        }
+        if (standby != null) standby.close();
+        if (spares != null) spares.close();
+        if (pool != null) exitAll(pool.clear());
+        exitAll(mGroupHosts.clear());
         mContext = null;
-        if (mManager == null || !mManager.asBinder().pingBinder()) return;
+        IProcessManager manager = mManager;
+        if (manager == null) return;
+        BinderRegistry.remove(manager);
+        if (!manager.asBinder().pingBinder()) return;
         try {
-            mManager.exit(0);
+            manager.exit(0);
         } catch (RuntimeException rethrown) {
             throw rethrown;
         } catch (Exception ignored) {
@@ -172,34 +683,135 @@ public abstract class AppProcess implements Closeable {
     }
 
     private @NonNull IProcessManager requireManager() {
+        if (mAutoReconnect && !initialized()) return awaitManager();
         if (!initialized()) throw new IllegalStateException("please call init() first.");
         return mManager;
     }
 
     public boolean remoteTransact(IBinder binder, int code, Parcel data, Parcel reply, int flags) {
-        return remoteTransact(requireManager(), binder, code, data, reply, flags);
+        return dispatch(binder, binder, code, manager -> remoteTransact(manager, binder, code, data, reply, flags));
+    }
+
+    public void remoteTransactBatch(List<Transaction> transactions) {
+        remoteTransactBatch(requireManager(), transactions);
+    }
+
+    public Future<Parcel> remoteTransactAsync(IBinder binder, int code, Parcel data, int flags, @Nullable Callback<Parcel> callback) {
+        return remoteTransactAsync(requireManager(), binder, code, data, flags, callback);
+    }
+
+    public Future<Parcel> remoteTransactAsync(IBinder binder, int code, Parcel data, int flags) {
+        return remoteTransactAsync(binder, code, data, flags, null);
+    }
+
+    public TransactProgram.Result remoteTransactProgram(TransactProgram program) {
+        return remoteTransactProgram(requireManager(), program);
+    }
+
+    /*
+     * 为binderWrapper返回的Binder启用返回数据缓存，null为关闭
+     * */
+    public synchronized AppProcess setTransactCache(@Nullable TransactCache cache) {
+        mTransactCache = cache;
+        if (mManager != null) BinderRegistry.of(mManager).setCache(cache);
+        return this;
+    }
+
+    public synchronized @Nullable TransactCache getTransactCache() {
+        return mTransactCache;
+    }
+
+    /*
+     * 合并binderWrapper返回的Binder上同时发出的相同调用，null为关闭
+     * */
+    public synchronized AppProcess setSingleFlight(@Nullable TransactSingleFlight singleFlight) {
+        mSingleFlight = singleFlight;
+        if (mManager != null) BinderRegistry.of(mManager).setSingleFlight(singleFlight);
+        return this;
+    }
+
+    public synchronized @Nullable TransactSingleFlight getSingleFlight() {
+        return mSingleFlight;
     }
 
     public IBinder binderWrapper(IBinder binder) {
+        if (mPool != null || mAutoReconnect) return new ManagedBinder(this, binder);
         return binderWrapper(requireManager(), binder);
     }
 
     public Process remoteProcess(@NonNull List<String> cmdList, @Nullable Map<String, String> env, @Nullable String directory) {
+        return new RemoteProcess(dispatch(null, manager -> manager.remoteProcess(cmdList, env, directory)));
+    }
+
+    /*
+     * 在一次通信中执行命令并返回其退出码与输出，适用于短时间运行的命令；
+     * maxOutputBytes为stdout与stderr各自保留的最大字节数，timeoutMillis后强制结束进程，不大于0时不限制
+     * */
+    public ExecResult exec(@NonNull List<String> cmdList, @Nullable Map<String, String> env, @Nullable String directory,
+                           @Nullable byte[] stdin, int maxOutputBytes, long timeoutMillis) {
+        return dispatch(null, manager -> manager.exec(cmdList, env, directory, stdin, maxOutputBytes, timeoutMillis));
+    }
+
+    public ExecResult exec(@NonNull List<String> cmdList) {
+        return exec(cmdList, null, null, null, DEFAULT_EXEC_OUTPUT_BYTES, 0);
+    }
+
+    public ThreadPoolStats threadPoolStats() {
         try {
-            return new RemoteProcess(requireManager().remoteProcess(cmdList, env, directory));
+            return requireManager().threadPoolStats();
         } catch (RemoteException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public IBinder serviceBinder(ComponentName componentName) {
+    public RegistryStats registryStats() {
         try {
-            return requireManager().serviceBinder(componentName).getBinder();
+            return requireManager().registryStats();
         } catch (RemoteException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /*
+     * 当前进程中binderWrapper返回的Binder按(接口描述符, code)统计的调用情况
+     * */
+    public static @NonNull List<TransactMetrics.Entry> transactMetrics() {
+        return BinderWrapper.sMetrics.snapshot();
+    }
+
+    public static void resetTransactMetrics() {
+        BinderWrapper.sMetrics.reset();
+    }
+
+    /*
+     * ProcessManager的文本状态，包括Binder线程、登记表与按(接口描述符, code)统计的调用情况
+     * */
+    public @NonNull String dumpManager(@Nullable String... args) {
+        IBinder binder = requireManager().asBinder();
+        try {
+            ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+            try (InputStream input = new ParcelFileDescriptor.AutoCloseInputStream(pipe[0])) {
+                // 异步dump，ProcessManager写入的同时在这里读取，输出超过管道缓冲区也不会阻塞
+                try {
+                    binder.dumpAsync(pipe[1].getFileDescriptor(), args);
+                } finally {
+                    pipe[1].close();
+                }
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int length;
+                while ((length = input.read(buffer)) != -1) output.write(buffer, 0, length);
+                return output.toString("UTF-8");
+            }
+        } catch (IOException | RemoteException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public IBinder serviceBinder(ComponentName componentName) {
+        return dispatch(null, manager -> manager.serviceBinder(componentName).getBinder());
+    }
+
     public void linkDeathToThis() {
         IClientManager clientManager = new ClientManager();
         linkDeathTo(clientManager.asBinder());
@@ -209,45 +821,174 @@ public abstract class AppProcess implements Closeable {
         linkDeathTo(requireManager(), binder);
     }
 
-    private final Map<String, Object> locks = new HashMap<>();
-
-    private synchronized Object buildLock(String token) {
-        Object lock = locks.get(token);
-        if (lock == null) lock = new Object();
-        locks.put(token, lock);
-        return lock;
-    }
-
+    /*
+     * useCache为false时启动一个新的进程并直接返回其Binder，该Binder不会被缓存
+     * */
     public IBinder isolatedServiceBinder(@NonNull ComponentName componentName, boolean useCache) {
-        if (!useCache) isolatedServiceBinderUnchecked(componentName);
+        if (!useCache) return isolatedServiceBinderUnchecked(componentName);
         return isolatedServiceBinder(componentName);
     }
 
+    /*
+     * 同一组件同时只会启动一次，不同组件可并行启动；组件的Binder死亡后会重新启动
+     * */
     public IBinder isolatedServiceBinder(@NonNull ComponentName componentName) {
-        String token = componentName.flattenToString();
-        synchronized (buildLock(token)) {
-            IBinder existsBinder = mChildProcess.get(token);
-            if (existsBinder != null) return existsBinder;
-            final IBinder binder = isolatedServiceBinderUnchecked(componentName);
-            if (binder == null) return null;
-            mChildProcess.put(token, binder);
-            try {
-                binder.linkToDeath(() -> {
-                    IBinder curBinder = mChildProcess.get(token);
-                    if (curBinder == null || curBinder != binder) return;
-                    mChildProcess.remove(token);
-                }, 0);
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-            return binder;
+        return mChildProcess.get(componentName.flattenToString(), () -> isolatedServiceBinderUnchecked(componentName));
+    }
+
+    /*
+     * 子进程默认使用精简的启动dex作为类路径，关闭后使用整个APK
+     * */
+    public AppProcess setSlimClassPath(boolean enabled) {
+        mSlimClassPath = enabled;
+        return this;
+    }
+
+    /*
+     * 子进程（NewProcess）的类路径，精简dex不可用时回退到APK
+     * */
+    protected @NonNull String newProcessClassPath(@NonNull Context context) {
+        if (mSlimClassPath) {
+            String path = BootDex.path(context);
+            if (path != null) return path;
+        }
+        return context.getPackageCodePath();
+    }
+
+    /*
+     * 设置组件的放置策略，isolatedServiceBinder会据此决定组件运行在独立进程还是与其他组件共享进程
+     * */
+    public AppProcess setPlacement(@NonNull ComponentName componentName, @NonNull Placement placement) {
+        synchronized (mPlacements) {
+            mPlacements.put(componentName.flattenToString(), placement);
+        }
+        return this;
+    }
+
+    public AppProcess setDefaultPlacement(@NonNull Placement placement) {
+        synchronized (mPlacements) {
+            mDefaultPlacement = placement;
+        }
+        return this;
+    }
+
+    public @NonNull Placement getPlacement(@NonNull ComponentName componentName) {
+        synchronized (mPlacements) {
+            Placement placement = mPlacements.get(componentName.flattenToString());
+            return placement != null ? placement : mDefaultPlacement;
+        }
+    }
+
+    private @Nullable IBinder groupServiceBinder(@NonNull String group, @NonNull ComponentName componentName) {
+        IProcessManager host = mGroupHosts.get(group, this::newManager);
+        if (host == null) return null;
+        try {
+            return host.serviceBinder(componentName).getBinder();
+        } catch (RemoteException e) {
+            throw new RuntimeException(e);
         }
     }
 
     private IBinder isolatedServiceBinderUnchecked(@NonNull ComponentName componentName) {
+        Placement placement = getPlacement(componentName);
+        if (placement == Placement.SHARED_UID) return serviceBinder(componentName);
+        if (placement.getGroup() != null) return groupServiceBinder(placement.getGroup(), componentName);
+
+        ManagerStandby spares;
+        synchronized (this) {
+            spares = mSpares;
+        }
+        if (spares != null) {
+            IBinder binder = specializeSpare(spares.take(), componentName);
+            if (binder != null) return binder;
+        }
         return NewProcessReceiver.start(mContext, this, componentName);
     }
 
+    /*
+     * 让空闲进程在自身中实例化组件，该进程此后专用于此组件
+     * */
+    private static @Nullable IBinder specializeSpare(@Nullable IProcessManager spare, @NonNull ComponentName componentName) {
+        if (spare == null) return null;
+        try {
+            return spare.serviceBinder(componentName).getBinder();
+        } catch (RemoteException | RuntimeException e) {
+            e.printStackTrace();
+            try {
+                spare.exit(0);
+            } catch (RemoteException | RuntimeException ignored) {
+            }
+            return null;
+        }
+    }
+
+    /*
+     * 设置异步初始化所使用的线程池，默认最多同时启动DEFAULT_ASYNC_PARALLELISM个进程
+     * */
+    public synchronized AppProcess setAsyncExecutor(@NonNull ExecutorService executor) {
+        mAsyncExecutor = executor;
+        return this;
+    }
+
+    private synchronized @NonNull ExecutorService requireAsyncExecutor() {
+        if (mAsyncExecutor != null) return mAsyncExecutor;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_ASYNC_PARALLELISM, DEFAULT_ASYNC_PARALLELISM,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "AppProcessAsync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        mAsyncExecutor = executor;
+        return executor;
+    }
+
+    /*
+     * 等待子进程发回Binder的最长时间，超时后将销毁已启动的进程
+     * */
+    public AppProcess setSpawnTimeout(long timeout, @NonNull TimeUnit unit) {
+        mSpawnTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    public long getSpawnTimeoutMillis() {
+        return mSpawnTimeoutMillis;
+    }
+
+    private <T> @NonNull Future<T> submitAsync(@NonNull Callable<T> callable, @Nullable Callback<T> callback) {
+        CallbackFuture<T> future = new CallbackFuture<>(callable, callback);
+        requireAsyncExecutor().execute(future);
+        return future;
+    }
+
+    /*
+     * 在后台线程中执行init()，可通过Future取消或限时等待，结果同时回调给callback
+     * */
+    public @NonNull Future<Boolean> initAsync(@NonNull Context context, @Nullable Callback<Boolean> callback) {
+        return submitAsync(() -> init(context), callback);
+    }
+
+    public @NonNull Future<Boolean> initAsync(@NonNull Context context) {
+        return initAsync(context, null);
+    }
+
+    /*
+     * 多个组件可同时启动，总耗时取决于最慢的一个，而非所有启动耗时之和
+     * */
+    public @NonNull Future<IBinder> isolatedServiceBinderAsync(@NonNull ComponentName componentName, @Nullable Callback<IBinder> callback) {
+        return submitAsync(() -> isolatedServiceBinder(componentName), callback);
+    }
+
+    public @NonNull Future<IBinder> isolatedServiceBinderAsync(@NonNull ComponentName componentName) {
+        return isolatedServiceBinderAsync(componentName, null);
+    }
+
+    public interface Callback<T> {
+        void onResult(@Nullable T result);
+
+        void onError(@NonNull Throwable throwable);
+    }
+
     public static class Default extends AppProcess {
     }
 
@@ -263,16 +1004,38 @@ public abstract class AppProcess implements Closeable {
 
         @Override
         public void close() {
+            IProcessManager manager = mManager;
             mManager = null;
+            if (manager != null) BinderRegistry.remove(manager);
         }
     }
 
     public abstract static class Terminal extends Default {
+        private boolean mSessionPool = false;
+
         protected abstract @NonNull List<String> newTerminal();
 
+        /*
+         * 复用长期存活的终端执行命令，避免每次start()都重新启动su
+         * 注意：复用终端中执行的命令不接收stdin
+         * */
+        public Terminal setSessionPool(boolean enabled) {
+            mSessionPool = enabled;
+            return this;
+        }
+
+        public boolean isSessionPool() {
+            return mSessionPool;
+        }
+
+        public static void closeSessionPools() {
+            TerminalSessionPool.closeAll();
+        }
+
         @NonNull
         @Override
         protected Process newProcess(@NonNull ProcessParams params) throws IOException {
+            if (mSessionPool) return TerminalSessionPool.get(newTerminal()).exec(params);
             ProcessParams newParams = new ProcessParams(params).setCmdList(newTerminal());
             Process process = super.newProcess(newParams);
             PrintWriter printWriter = new PrintWriter(process.getOutputStream(), true);
@@ -300,6 +1063,13 @@ public abstract class AppProcess implements Closeable {
     }
 
     public static class RootSystem extends Terminal {
+        // uid 1000无法读取应用的私有目录，因此仍使用APK作为类路径
+        @NonNull
+        @Override
+        protected String newProcessClassPath(@NonNull Context context) {
+            return context.getPackageCodePath();
+        }
+
         @NonNull
         @Override
         protected List<String> newTerminal() {
@@ -310,6 +1080,104 @@ public abstract class AppProcess implements Closeable {
         }
     }
 
+    /*
+     * remoteTransactBatch中的一项，执行后可通过getResult/getError获取结果，reply为null时丢弃返回数据
+     * */
+    public static class Transaction {
+        private final @NonNull IBinder mBinder;
+
+        private final int mCode;
+
+        private final @NonNull Parcel mData;
+
+        private final @Nullable Parcel mReply;
+
+        private final int mFlags;
+
+        private boolean mResult = false;
+
+        private @Nullable String mError = null;
+
+        public Transaction(@NonNull IBinder binder, int code, @NonNull Parcel data, @Nullable Parcel reply, int flags) {
+            mBinder = binder;
+            mCode = code;
+            mData = data;
+            mReply = reply;
+            mFlags = flags;
+        }
+
+        @NonNull
+        public IBinder getBinder() {
+            return mBinder;
+        }
+
+        public int getCode() {
+            return mCode;
+        }
+
+        @NonNull
+        public Parcel getData() {
+            return mData;
+        }
+
+        @Nullable
+        public Parcel getReply() {
+            return mReply;
+        }
+
+        public int getFlags() {
+            return mFlags;
+        }
+
+        public boolean getResult() {
+            return mResult;
+        }
+
+        @Nullable
+        public String getError() {
+            return mError;
+        }
+    }
+
+    /*
+     * ISOLATED：组件独占一个进程；SHARED_UID：组件运行在当前的ProcessManager中；
+     * group(name)：同一组的组件共享一个进程
+     * */
+    public static final class Placement {
+        public static final Placement ISOLATED = new Placement(null);
+
+        public static final Placement SHARED_UID = new Placement(null);
+
+        private final @Nullable String mGroup;
+
+        private Placement(@Nullable String group) {
+            mGroup = group;
+        }
+
+        public static @NonNull Placement group(@NonNull String group) {
+            return new Placement(group);
+        }
+
+        @Nullable
+        public String getGroup() {
+            return mGroup;
+        }
+    }
+
+    public enum PoolPolicy {
+        // 选择未完成调用最少的ProcessManager
+        LEAST_OUTSTANDING,
+        // 同一目标Binder的调用总是经由同一个ProcessManager，保持其顺序；没有目标Binder的调用按LEAST_OUTSTANDING
+        CONSISTENT_HASH
+    }
+
+    public enum Handshake {
+        // 通过ActivityManager分发广播，任何uid都可用，但在系统繁忙时会被节流
+        BROADCAST,
+        // 直接调用客户端的NewProcessProvider，需要root或system权限
+        PROVIDER
+    }
+
     public static class ProcessParams {
         private @NonNull List<String> mCmdList;
 
@@ -0,0 +1,62 @@
+package com.rosan.app_process;
+
+import android.os.Binder;
+import android.os.DeadObjectException;
+import android.os.Parcel;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * 接收ProcessManager以oneway方式回传的异步transact结果，每个ProcessManager共用一个，
+ * 按调用编号完成对应的Future，ProcessManager死亡时所有未完成的Future以DeadObjectException结束
+ * */
+class AsyncReplies extends Binder {
+    private final Map<Integer, CallbackFuture<Parcel>> mPending = new ConcurrentHashMap<>();
+
+    private final AtomicInteger mNextId = new AtomicInteger(0);
+
+    int add(@NonNull CallbackFuture<Parcel> future) {
+        int id = mNextId.incrementAndGet();
+        mPending.put(id, future);
+        return id;
+    }
+
+    void remove(int id) {
+        mPending.remove(id);
+    }
+
+    void failAll() {
+        for (Integer id : mPending.keySet()) {
+            CallbackFuture<Parcel> future = mPending.remove(id);
+            if (future != null) future.completeExceptionally(new DeadObjectException());
+        }
+    }
+
+    @Override
+    protected boolean onTransact(int code, @NonNull Parcel data, @Nullable Parcel reply, int flags) {
+        if (code != FIRST_CALL_TRANSACTION) return false;
+        CallbackFuture<Parcel> future = mPending.remove(data.readInt());
+        // 已被取消的调用直接丢弃返回数据
+        if (future == null) return true;
+        int status = data.readInt();
+        if (status == ProcessManager.BATCH_STATUS_ERROR) {
+            future.completeExceptionally(new RuntimeException(data.readString()));
+            return true;
+        }
+        if (status == ProcessManager.BATCH_STATUS_FALSE) {
+            future.completeExceptionally(new IllegalStateException("transact returned false"));
+            return true;
+        }
+        Parcel result = Parcel.obtain();
+        result.appendFrom(data, data.dataPosition(), data.dataAvail());
+        result.setDataPosition(0);
+        future.complete(result);
+        if (future.isCancelled()) result.recycle();
+        return true;
+    }
+}
@@ -0,0 +1,181 @@
+package com.rosan.app_process;
+
+import android.os.IBinder;
+import android.os.RemoteException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+
+/*
+ * 每个ProcessManager一份：缓存其接口描述符，并按目标Binder复用BinderWrapper；
+ * BinderWrapper首次transact时在ProcessManager中注册目标Binder并获得一个整数句柄，
+ * 此后只需传递句柄，BinderWrapper被回收后句柄会被批量释放
+ * */
+class BinderRegistry {
+    private static final Map<IBinder, BinderRegistry> sRegistries = new HashMap<>();
+
+    private final @NonNull IProcessManager mManager;
+
+    private volatile String mDescriptor = null;
+
+    private final Map<IBinder, WrapperReference> mWrappers = new WeakHashMap<>();
+
+    private final ReferenceQueue<BinderWrapper> mQueue = new ReferenceQueue<>();
+
+    private final AsyncReplies mReplies = new AsyncReplies();
+
+    private volatile TransactCache mCache = null;
+
+    private volatile TransactSingleFlight mSingleFlight = null;
+
+    private BinderRegistry(@NonNull IProcessManager manager) {
+        mManager = manager;
+    }
+
+    static @NonNull BinderRegistry of(@NonNull IProcessManager manager) {
+        IBinder managerBinder = manager.asBinder();
+        synchronized (sRegistries) {
+            BinderRegistry registry = sRegistries.get(managerBinder);
+            if (registry != null) return registry;
+            final BinderRegistry created = new BinderRegistry(manager);
+            registry = created;
+            try {
+                managerBinder.linkToDeath(() -> {
+                    synchronized (sRegistries) {
+                        sRegistries.remove(managerBinder);
+                    }
+                    created.mReplies.failAll();
+                }, 0);
+            } catch (RemoteException ignored) {
+                // 已经死亡的ProcessManager不需要缓存
+                return registry;
+            }
+            sRegistries.put(managerBinder, registry);
+            return registry;
+        }
+    }
+
+    /*
+     * 不再使用该ProcessManager时移除其登记表；本地的ProcessManager（None模式）不会收到死亡通知，只能由此移除
+     * */
+    static void remove(@NonNull IProcessManager manager) {
+        BinderRegistry registry;
+        synchronized (sRegistries) {
+            registry = sRegistries.remove(manager.asBinder());
+        }
+        if (registry != null) registry.mReplies.failAll();
+    }
+
+    /*
+     * binderWrapper返回的Binder（BinderWrapper或ManagedBinder）对应的目标Binder，其他Binder原样返回
+     * */
+    static @NonNull IBinder unwrap(@NonNull IBinder binder) {
+        if (binder instanceof BinderWrapper) return ((BinderWrapper) binder).getTarget();
+        if (binder instanceof ManagedBinder) return ((ManagedBinder) binder).getTarget();
+        return binder;
+    }
+
+    @NonNull
+    IProcessManager getManager() {
+        return mManager;
+    }
+
+    @Nullable
+    TransactCache getCache() {
+        return mCache;
+    }
+
+    void setCache(@Nullable TransactCache cache) {
+        mCache = cache;
+    }
+
+    @Nullable
+    TransactSingleFlight getSingleFlight() {
+        return mSingleFlight;
+    }
+
+    void setSingleFlight(@Nullable TransactSingleFlight singleFlight) {
+        mSingleFlight = singleFlight;
+    }
+
+    @NonNull
+    AsyncReplies getReplies() {
+        return mReplies;
+    }
+
+    @NonNull
+    String getDescriptor() throws RemoteException {
+        String descriptor = mDescriptor;
+        if (descriptor != null) return descriptor;
+        descriptor = Objects.requireNonNull(mManager.asBinder().getInterfaceDescriptor());
+        mDescriptor = descriptor;
+        return descriptor;
+    }
+
+    @NonNull
+    BinderWrapper wrapper(@NonNull IBinder binder) {
+        releaseCollected();
+        synchronized (mWrappers) {
+            WrapperReference reference = mWrappers.get(binder);
+            BinderWrapper wrapper = reference != null ? reference.get() : null;
+            if (wrapper != null) return wrapper;
+            wrapper = new BinderWrapper(this, binder);
+            mWrappers.put(binder, new WrapperReference(wrapper, mQueue));
+            return wrapper;
+        }
+    }
+
+    /*
+     * 在ProcessManager中注册目标Binder，返回句柄
+     * */
+    int register(@NonNull BinderWrapper wrapper) throws RemoteException {
+        releaseCollected();
+        int handle = mManager.registerBinder(new ParcelableBinder(wrapper.getTarget()));
+        synchronized (mWrappers) {
+            WrapperReference reference = mWrappers.get(wrapper.getTarget());
+            if (reference != null && reference.get() == wrapper) {
+                reference.mHandle = handle;
+                return handle;
+            }
+        }
+        // 不在登记表中的BinderWrapper无法被追踪回收，直接释放句柄并退回到传递Binder的方式
+        mManager.unregisterBinders(new int[]{handle});
+        return 0;
+    }
+
+    private void releaseCollected() {
+        List<Integer> handles = null;
+        Reference<? extends BinderWrapper> reference;
+        while ((reference = mQueue.poll()) != null) {
+            int handle = ((WrapperReference) reference).mHandle;
+            if (handle == 0) continue;
+            if (handles == null) handles = new ArrayList<>();
+            handles.add(handle);
+        }
+        if (handles == null) return;
+        int[] array = new int[handles.size()];
+        for (int i = 0; i < array.length; i++) array[i] = handles.get(i);
+        try {
+            mManager.unregisterBinders(array);
+        } catch (RemoteException | RuntimeException ignored) {
+        }
+    }
+
+    private static class WrapperReference extends WeakReference<BinderWrapper> {
+        private volatile int mHandle = 0;
+
+        WrapperReference(BinderWrapper referent, ReferenceQueue<? super BinderWrapper> queue) {
+            super(referent, queue);
+        }
+    }
+}
@@ -11,15 +11,62 @@ import androidx.annotation.Nullable;
 import java.io.FileDescriptor;
 
 class BinderWrapper implements IBinder {
-    private final IProcessManager mManager;
+    // 当前进程中所有BinderWrapper的调用统计
+    static final TransactMetrics sMetrics = new TransactMetrics();
+
+    private final BinderRegistry mRegistry;
 
     private final IBinder mBinder;
 
-    BinderWrapper(@NonNull IProcessManager manager, @NonNull IBinder binder) {
-        this.mManager = manager;
+    private volatile boolean mRegistered = false;
+
+    private volatile int mHandle = 0;
+
+    private volatile String mDescriptor = null;
+
+    BinderWrapper(@NonNull BinderRegistry registry, @NonNull IBinder binder) {
+        this.mRegistry = registry;
         this.mBinder = binder;
     }
 
+    @NonNull
+    IBinder getTarget() {
+        return mBinder;
+    }
+
+    private int requireHandle() throws RemoteException {
+        if (mRegistered) return mHandle;
+        synchronized (this) {
+            if (mRegistered) return mHandle;
+            mHandle = mRegistry.register(this);
+            mRegistered = true;
+            return mHandle;
+        }
+    }
+
+    /*
+     * 目标的接口描述符只查询一次
+     * */
+    @Nullable
+    String getCachedDescriptor() throws RemoteException {
+        String descriptor = mDescriptor;
+        if (descriptor != null) return descriptor;
+        descriptor = mBinder.getInterfaceDescriptor();
+        mDescriptor = descriptor;
+        return descriptor;
+    }
+
+    // 仅用于统计，查询失败时记为空描述符，下次调用再查询
+    @NonNull
+    private String metricsDescriptor() {
+        try {
+            String descriptor = getCachedDescriptor();
+            return descriptor != null ? descriptor : "";
+        } catch (RemoteException | RuntimeException ignored) {
+            return "";
+        }
+    }
+
     @Nullable
     @Override
     public String getInterfaceDescriptor() throws RemoteException {
@@ -54,7 +101,63 @@ class BinderWrapper implements IBinder {
 
     @Override
     public boolean transact(int code, @NonNull Parcel data, @Nullable Parcel reply, int flags) throws RemoteException {
-        return AppProcess.remoteTransact(mManager, mBinder, code, data, reply, flags);
+        String descriptor = metricsDescriptor();
+        int bytesIn = data.dataSize();
+        long start = System.nanoTime();
+        boolean result = false;
+        try {
+            result = transactCached(code, data, reply, flags);
+            return result;
+        } finally {
+            sMetrics.record(descriptor, code, bytesIn, reply != null ? reply.dataSize() : 0,
+                    System.nanoTime() - start, !result);
+        }
+    }
+
+    private boolean transactCached(int code, @NonNull Parcel data, @Nullable Parcel reply, int flags) throws RemoteException {
+        TransactCache cache = mRegistry.getCache();
+        TransactKey key = cache != null && reply != null && (flags & FLAG_ONEWAY) == 0
+                ? cache.key(this, code, data) : null;
+        if (key != null && cache.get(key, reply)) return true;
+        boolean result = transactShared(code, data, reply, flags);
+        if (key != null && result) cache.put(this, key, reply);
+        return result;
+    }
+
+    private boolean transactShared(int code, @NonNull Parcel data, @Nullable Parcel reply, int flags) throws RemoteException {
+        TransactSingleFlight singleFlight = mRegistry.getSingleFlight();
+        TransactKey key = singleFlight != null && reply != null && (flags & FLAG_ONEWAY) == 0
+                ? singleFlight.key(this, code, data) : null;
+        if (key == null) return transactRemote(code, data, reply, flags);
+        return singleFlight.transact(key, reply, () -> transactRemote(code, data, reply, flags));
+    }
+
+    /*
+     * 句柄失效时丢弃并重新注册一次，仍然失效则本次退回到传递Binder的方式
+     * */
+    private boolean transactRemote(int code, @NonNull Parcel data, @Nullable Parcel reply, int flags) throws RemoteException {
+        int handle = requireHandle();
+        if (handle != 0) {
+            try {
+                return AppProcess.remoteTransact(mRegistry, handle, code, data, reply, flags);
+            } catch (StaleHandleException ignored) {
+                dropHandle(handle);
+            }
+            handle = requireHandle();
+        }
+        if (handle != 0) {
+            try {
+                return AppProcess.remoteTransact(mRegistry, handle, code, data, reply, flags);
+            } catch (StaleHandleException ignored) {
+            }
+        }
+        return AppProcess.remoteTransact(mRegistry.getManager(), mBinder, code, data, reply, flags);
+    }
+
+    private synchronized void dropHandle(int handle) {
+        if (!mRegistered || mHandle != handle) return;
+        mRegistered = false;
+        mHandle = 0;
     }
 
     @Override
@@ -0,0 +1,72 @@
+package com.rosan.app_process;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+ * 构建时生成的精简dex（仅包含本库、commons-cli与hiddenapibypass），用作子进程的类路径，
+ * 子进程无需打开并校验整个APK，组件自身的代码在需要时再通过PackageContext加载
+ * */
+class BootDex {
+    public static String ASSET_NAME = "app_process_boot.jar";
+
+    private static String sPath = null;
+
+    /*
+     * 将精简dex解压至code cache目录（每个APK版本只解压一次），失败时返回null
+     * */
+    static synchronized @Nullable String path(@NonNull Context context) {
+        if (sPath != null && new File(sPath).exists()) return sPath;
+        sPath = null;
+        try {
+            File dir = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? context.getCodeCacheDir() : context.getCacheDir();
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            File file = new File(dir, "app_process_boot_" + info.lastUpdateTime + ".jar");
+            if (!file.exists()) extract(context, dir, file);
+            sPath = file.getAbsolutePath();
+        } catch (IOException | PackageManager.NameNotFoundException e) {
+            e.printStackTrace();
+        }
+        return sPath;
+    }
+
+    private static void extract(@NonNull Context context, @NonNull File dir, @NonNull File file) throws IOException {
+        File[] olds = dir.listFiles((d, name) -> name.startsWith("app_process_boot_"));
+        if (olds != null) {
+            for (File old : olds) {
+                //noinspection ResultOfMethodCallIgnored
+                old.delete();
+            }
+        }
+        File temp = new File(dir, file.getName() + ".tmp");
+        try (InputStream input = context.getAssets().open(ASSET_NAME);
+             OutputStream output = new FileOutputStream(temp)) {
+            byte[] bytes = new byte[8192];
+            int len;
+            while ((len = input.read(bytes)) > 0) {
+                output.write(bytes, 0, len);
+            }
+        }
+        // root与当前应用均需读取；只读，避免被当作可写的dex拒绝加载
+        //noinspection ResultOfMethodCallIgnored
+        temp.setReadable(true, false);
+        //noinspection ResultOfMethodCallIgnored
+        temp.setReadOnly();
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("rename " + temp + " to " + file + " failed");
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.rosan.app_process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/*
+ * 完成（包括取消）时通知AppProcess.Callback的FutureTask
+ * */
+class CallbackFuture<T> extends FutureTask<T> {
+    private final @Nullable AppProcess.Callback<T> mCallback;
+
+    CallbackFuture(@NonNull Callable<T> callable, @Nullable AppProcess.Callback<T> callback) {
+        super(callable);
+        mCallback = callback;
+    }
+
+    /*
+     * 不执行任务，由complete/completeExceptionally从外部设置结果
+     * */
+    CallbackFuture(@Nullable AppProcess.Callback<T> callback) {
+        this(() -> {
+            throw new IllegalStateException("completed externally");
+        }, callback);
+    }
+
+    void complete(@Nullable T result) {
+        set(result);
+    }
+
+    void completeExceptionally(@NonNull Throwable throwable) {
+        setException(throwable);
+    }
+
+    @Override
+    protected void done() {
+        if (mCallback == null) return;
+        if (isCancelled()) {
+            mCallback.onError(new CancellationException());
+            return;
+        }
+        T result;
+        try {
+            result = get();
+        } catch (ExecutionException e) {
+            mCallback.onError(e.getCause() != null ? e.getCause() : e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mCallback.onError(e);
+            return;
+        }
+        mCallback.onResult(result);
+    }
+}
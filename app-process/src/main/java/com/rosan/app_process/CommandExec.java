@@ -0,0 +1,147 @@
+package com.rosan.app_process;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * 在ProcessManager中执行命令并收集全部输出，stdin、stdout、stderr分别在独立的线程中读写以免互相阻塞
+ * */
+class CommandExec {
+    // 进程退出后等待输出读取完成的最长时间，进程的子进程可能仍持有管道
+    private static final long DRAIN_GRACE_MILLIS = 1000;
+
+    private static final ExecutorService sIO = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ProcessExec");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static @NonNull ExecResult run(@NonNull Process process, @Nullable byte[] stdin, int maxOutputBytes, long timeoutMillis) {
+        Future<?> writer = sIO.submit(() -> {
+            try (OutputStream outputStream = process.getOutputStream()) {
+                if (stdin != null) outputStream.write(stdin);
+            } catch (IOException ignored) {
+                // 进程未读取stdin就已退出
+            }
+        });
+        Collector stdout = new Collector(process.getInputStream(), maxOutputBytes);
+        Collector stderr = new Collector(process.getErrorStream(), maxOutputBytes);
+        Future<?> stdoutFuture = sIO.submit(stdout);
+        Future<?> stderrFuture = sIO.submit(stderr);
+
+        boolean timedOut = !waitFor(process, timeoutMillis);
+        if (timedOut) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) process.destroyForcibly();
+            else process.destroy();
+            waitFor(process, 0);
+        }
+        finish(stdoutFuture, stdout);
+        finish(stderrFuture, stderr);
+        writer.cancel(true);
+        return new ExecResult(process.exitValue(), stdout.toByteArray(), stderr.toByteArray(),
+                stdout.mTruncated, stderr.mTruncated, timedOut);
+    }
+
+    /*
+     * timeoutMillis不大于0时一直等待，超时返回false
+     * */
+    private static boolean waitFor(@NonNull Process process, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (timeoutMillis <= 0) {
+                        process.waitFor();
+                        return true;
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+                        return process.waitFor(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+                    try {
+                        process.exitValue();
+                        return true;
+                    } catch (IllegalThreadStateException e) {
+                        if (remaining <= 0) return false;
+                        Thread.sleep(Math.min(remaining, 10));
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void finish(@NonNull Future<?> future, @NonNull Collector collector) {
+        try {
+            future.get(DRAIN_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            collector.close();
+            future.cancel(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            collector.close();
+        }
+    }
+
+    private static class Collector extends ByteArrayOutputStream implements Runnable {
+        private final @NonNull InputStream mInputStream;
+
+        private final int mLimit;
+
+        private volatile boolean mTruncated = false;
+
+        Collector(@NonNull InputStream inputStream, int limit) {
+            mInputStream = inputStream;
+            mLimit = limit;
+        }
+
+        @Override
+        public void run() {
+            byte[] bytes = new byte[8192];
+            int len;
+            try {
+                while ((len = mInputStream.read(bytes)) > 0) {
+                    // 超出上限的部分继续读取并丢弃，以免进程阻塞在写入上
+                    synchronized (this) {
+                        int keep = mLimit > 0 ? Math.min(len, mLimit - count) : len;
+                        if (keep > 0) write(bytes, 0, keep);
+                        if (keep < len) mTruncated = true;
+                    }
+                }
+            } catch (IOException ignored) {
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                mInputStream.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        @NonNull
+        @Override
+        public synchronized byte[] toByteArray() {
+            return super.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.rosan.app_process;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+
+import java.nio.charset.Charset;
+
+/*
+ * IProcessManager::exec的结果，输出超过maxOutputBytes时被截断
+ * */
+public class ExecResult implements Parcelable {
+    public static final Creator<ExecResult> CREATOR = new Creator<ExecResult>() {
+        @Override
+        public ExecResult createFromParcel(Parcel in) {
+            return new ExecResult(in);
+        }
+
+        @Override
+        public ExecResult[] newArray(int size) {
+            return new ExecResult[size];
+        }
+    };
+
+    private final int exitCode;
+
+    private final @NonNull byte[] stdout;
+
+    private final @NonNull byte[] stderr;
+
+    private final boolean stdoutTruncated;
+
+    private final boolean stderrTruncated;
+
+    private final boolean timedOut;
+
+    public ExecResult(int exitCode, @NonNull byte[] stdout, @NonNull byte[] stderr, boolean stdoutTruncated, boolean stderrTruncated, boolean timedOut) {
+        this.exitCode = exitCode;
+        this.stdout = stdout;
+        this.stderr = stderr;
+        this.stdoutTruncated = stdoutTruncated;
+        this.stderrTruncated = stderrTruncated;
+        this.timedOut = timedOut;
+    }
+
+    public ExecResult(Parcel parcel) {
+        this.exitCode = parcel.readInt();
+        this.stdout = parcel.createByteArray();
+        this.stderr = parcel.createByteArray();
+        this.stdoutTruncated = parcel.readInt() != 0;
+        this.stderrTruncated = parcel.readInt() != 0;
+        this.timedOut = parcel.readInt() != 0;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    @NonNull
+    public byte[] getStdout() {
+        return stdout;
+    }
+
+    @NonNull
+    public byte[] getStderr() {
+        return stderr;
+    }
+
+    @NonNull
+    public String getStdoutString() {
+        return new String(stdout, Charset.forName("UTF-8"));
+    }
+
+    @NonNull
+    public String getStderrString() {
+        return new String(stderr, Charset.forName("UTF-8"));
+    }
+
+    public boolean isStdoutTruncated() {
+        return stdoutTruncated;
+    }
+
+    public boolean isStderrTruncated() {
+        return stderrTruncated;
+    }
+
+    // 超时后进程被强制结束，此时的exitCode为被结束后的退出码
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(@NonNull Parcel dest, int flags) {
+        dest.writeInt(exitCode);
+        dest.writeByteArray(stdout);
+        dest.writeByteArray(stderr);
+        dest.writeInt(stdoutTruncated ? 1 : 0);
+        dest.writeInt(stderrTruncated ? 1 : 0);
+        dest.writeInt(timedOut ? 1 : 0);
+    }
+}
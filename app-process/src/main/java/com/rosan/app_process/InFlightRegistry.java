@@ -0,0 +1,125 @@
+package com.rosan.app_process;
+
+import android.os.IBinder;
+import android.os.RemoteException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/*
+ * 按键缓存以Binder为载体的对象：同一个键同时只会创建一次，其他调用者等待同一个Future，
+ * 不同的键互不阻塞；已创建的对象无锁读取，其Binder死亡或创建失败时自动移除
+ * */
+class InFlightRegistry<T> {
+    interface BinderOf<T> {
+        @NonNull IBinder binderOf(@NonNull T value);
+    }
+
+    private final ConcurrentHashMap<String, FutureTask<T>> mEntries = new ConcurrentHashMap<>();
+
+    private final @NonNull BinderOf<T> mBinderOf;
+
+    InFlightRegistry(@NonNull BinderOf<T> binderOf) {
+        mBinderOf = binderOf;
+    }
+
+    @Nullable
+    T get(@NonNull String key, @NonNull Callable<T> factory) {
+        while (true) {
+            FutureTask<T> future = mEntries.get(key);
+            if (future == null) {
+                FutureTask<T> created = new FutureTask<>(factory);
+                future = mEntries.putIfAbsent(key, created);
+                if (future == null) {
+                    future = created;
+                    created.run();
+                    linkDeath(key, created);
+                }
+            }
+            T value = await(key, future);
+            if (value == null) return null;
+            if (mBinderOf.binderOf(value).isBinderAlive()) return value;
+            // 死亡通知尚未送达
+            mEntries.remove(key, future);
+        }
+    }
+
+    @Nullable
+    T peek(@NonNull String key) {
+        FutureTask<T> future = mEntries.get(key);
+        if (future == null || !future.isDone()) return null;
+        try {
+            return future.get();
+        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
+    /*
+     * 移除并返回所有已创建的对象；正在创建的对象会等待其创建完成后一并返回，
+     * 不能取消：cancel对已在运行的FutureTask同样会成功，创建出的对象将无人关闭
+     * */
+    @NonNull
+    List<T> clear() {
+        List<T> values = new ArrayList<>();
+        boolean interrupted = false;
+        for (String key : mEntries.keySet()) {
+            FutureTask<T> future = mEntries.remove(key);
+            if (future == null) continue;
+            while (true) {
+                try {
+                    T value = future.get();
+                    if (value != null) values.add(value);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        return values;
+    }
+
+    private void linkDeath(@NonNull String key, @NonNull FutureTask<T> future) {
+        T value;
+        try {
+            value = future.get();
+        } catch (ExecutionException | InterruptedException e) {
+            mEntries.remove(key, future);
+            return;
+        }
+        if (value == null) {
+            mEntries.remove(key, future);
+            return;
+        }
+        try {
+            mBinderOf.binderOf(value).linkToDeath(() -> mEntries.remove(key, future), 0);
+        } catch (RemoteException e) {
+            mEntries.remove(key, future);
+        }
+    }
+
+    @Nullable
+    private T await(@NonNull String key, @NonNull FutureTask<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            mEntries.remove(key, future);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.rosan.app_process;
+
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.FileDescriptor;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/*
+ * 连接池或自动重连模式下binderWrapper返回的Binder，每次transact时才选择经由哪个ProcessManager转发，
+ * 因此ProcessManager重连后仍然可用（句柄会在新的ProcessManager中重新注册）
+ * */
+class ManagedBinder implements IBinder {
+    private final @NonNull AppProcess mAppProcess;
+
+    private final @NonNull IBinder mBinder;
+
+    // 按ProcessManager持有BinderWrapper，BinderRegistry只弱引用BinderWrapper，否则每次GC后都要重新注册句柄
+    private final Map<IBinder, BinderWrapper> mWrappers = new HashMap<>();
+
+    ManagedBinder(@NonNull AppProcess appProcess, @NonNull IBinder binder) {
+        mAppProcess = appProcess;
+        mBinder = binder;
+    }
+
+    @NonNull
+    IBinder getTarget() {
+        return mBinder;
+    }
+
+    @NonNull
+    private BinderWrapper wrapper(@NonNull IProcessManager manager) {
+        IBinder managerBinder = manager.asBinder();
+        synchronized (mWrappers) {
+            BinderWrapper wrapper = mWrappers.get(managerBinder);
+            if (wrapper != null) return wrapper;
+            // 重连后换用新的ProcessManager，已死亡的不再需要
+            Iterator<IBinder> iterator = mWrappers.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (!iterator.next().isBinderAlive()) iterator.remove();
+            }
+            wrapper = BinderRegistry.of(manager).wrapper(mBinder);
+            mWrappers.put(managerBinder, wrapper);
+            return wrapper;
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getInterfaceDescriptor() throws RemoteException {
+        return mBinder.getInterfaceDescriptor();
+    }
+
+    @Override
+    public boolean pingBinder() {
+        return mBinder.pingBinder();
+    }
+
+    @Override
+    public boolean isBinderAlive() {
+        return mBinder.isBinderAlive();
+    }
+
+    @Nullable
+    @Override
+    public IInterface queryLocalInterface(@NonNull String descriptor) {
+        return null;
+    }
+
+    @Override
+    public void dump(@NonNull FileDescriptor fd, @Nullable String[] args) throws RemoteException {
+        mBinder.dump(fd, args);
+    }
+
+    @Override
+    public void dumpAsync(@NonNull FileDescriptor fd, @Nullable String[] args) throws RemoteException {
+        mBinder.dumpAsync(fd, args);
+    }
+
+    @Override
+    public boolean transact(int code, @NonNull Parcel data, @Nullable Parcel reply, int flags) throws RemoteException {
+        return mAppProcess.dispatch(mBinder, mBinder, code, manager -> wrapper(manager).transact(code, data, reply, flags));
+    }
+
+    @Override
+    public void linkToDeath(@NonNull DeathRecipient recipient, int flags) throws RemoteException {
+        mBinder.linkToDeath(recipient, flags);
+    }
+
+    @Override
+    public boolean unlinkToDeath(@NonNull DeathRecipient recipient, int flags) {
+        return mBinder.unlinkToDeath(recipient, flags);
+    }
+}
@@ -0,0 +1,157 @@
+package com.rosan.app_process;
+
+import android.os.IBinder;
+import android.os.RemoteException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * 多个同模式的ProcessManager，按策略为每次调用选择一个；死亡的ProcessManager会被自动移出
+ * */
+class ManagerPool {
+    // 一致性哈希中每个ProcessManager的虚拟节点数
+    private static final int VIRTUAL_NODES = 32;
+
+    private final @NonNull AppProcess.PoolPolicy mPolicy;
+
+    private final List<Worker> mWorkers = new CopyOnWriteArrayList<>();
+
+    private volatile TreeMap<Integer, Worker> mRing = new TreeMap<>();
+
+    private final AtomicInteger mNext = new AtomicInteger();
+
+    ManagerPool(@NonNull AppProcess.PoolPolicy policy) {
+        mPolicy = policy;
+    }
+
+    /*
+     * owned为true的ProcessManager由连接池创建，close时一并结束
+     * */
+    void add(@NonNull IProcessManager manager, boolean owned) {
+        for (Worker worker : mWorkers) {
+            if (worker.mManager.asBinder() == manager.asBinder()) return;
+        }
+        Worker worker = new Worker(manager, owned);
+        try {
+            manager.asBinder().linkToDeath(() -> remove(worker), 0);
+        } catch (RemoteException e) {
+            return;
+        }
+        mWorkers.add(worker);
+        rebuildRing();
+    }
+
+    private void remove(@NonNull Worker worker) {
+        if (mWorkers.remove(worker)) rebuildRing();
+    }
+
+    private synchronized void rebuildRing() {
+        TreeMap<Integer, Worker> ring = new TreeMap<>();
+        for (Worker worker : mWorkers) {
+            int seed = System.identityHashCode(worker.mManager.asBinder());
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(mix(seed * 31 + i), worker);
+            }
+        }
+        mRing = ring;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /*
+     * 选择一个ProcessManager并增加其未完成调用数，调用结束后需release；连接池为空时返回null
+     * */
+    @Nullable
+    Worker acquire(@Nullable IBinder key) {
+        Worker worker = mPolicy == AppProcess.PoolPolicy.CONSISTENT_HASH && key != null
+                ? byHash(key) : leastOutstanding();
+        if (worker == null) return null;
+        worker.mOutstanding.incrementAndGet();
+        worker.mCalls.incrementAndGet();
+        return worker;
+    }
+
+    void release(@NonNull Worker worker) {
+        worker.mOutstanding.decrementAndGet();
+    }
+
+    @Nullable
+    private Worker byHash(@NonNull IBinder key) {
+        key = BinderRegistry.unwrap(key);
+        TreeMap<Integer, Worker> ring = mRing;
+        if (ring.isEmpty()) return null;
+        Map.Entry<Integer, Worker> entry = ring.ceilingEntry(mix(System.identityHashCode(key)));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    @Nullable
+    private Worker leastOutstanding() {
+        Object[] workers = mWorkers.toArray();
+        if (workers.length == 0) return null;
+        // 从轮转的位置开始查找，未完成调用数相同时分散到不同的ProcessManager
+        int start = (mNext.getAndIncrement() & Integer.MAX_VALUE) % workers.length;
+        Worker best = null;
+        for (int i = 0; i < workers.length; i++) {
+            Worker worker = (Worker) workers[(start + i) % workers.length];
+            if (best == null || worker.mOutstanding.get() < best.mOutstanding.get()) best = worker;
+        }
+        return best;
+    }
+
+    /*
+     * 清空连接池，返回由连接池创建的ProcessManager
+     * */
+    @NonNull
+    List<IProcessManager> clear() {
+        List<IProcessManager> owned = new ArrayList<>();
+        for (Worker worker : mWorkers) {
+            if (worker.mOwned) owned.add(worker.mManager);
+        }
+        mWorkers.clear();
+        rebuildRing();
+        return owned;
+    }
+
+    @NonNull
+    PoolStats stats() {
+        Object[] workers = mWorkers.toArray();
+        int[] outstanding = new int[workers.length];
+        long[] calls = new long[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            outstanding[i] = ((Worker) workers[i]).mOutstanding.get();
+            calls[i] = ((Worker) workers[i]).mCalls.get();
+        }
+        return new PoolStats(mPolicy, outstanding, calls);
+    }
+
+    static class Worker {
+        final @NonNull IProcessManager mManager;
+
+        private final boolean mOwned;
+
+        private final AtomicInteger mOutstanding = new AtomicInteger();
+
+        private final AtomicLong mCalls = new AtomicLong();
+
+        Worker(@NonNull IProcessManager manager, boolean owned) {
+            mManager = manager;
+            mOwned = owned;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.rosan.app_process;
+
+import android.os.RemoteException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * 在后台预先启动并保持若干个已完成初始化的ProcessManager，需要时直接取用
+ * */
+class ManagerStandby {
+    interface Spawner {
+        @Nullable
+        IProcessManager spawn();
+    }
+
+    private final @NonNull Spawner mSpawner;
+
+    private final int mCapacity;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "AppProcessStandby");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Deque<Future<IProcessManager>> mStandbys = new ArrayDeque<>();
+
+    private boolean mClosed = false;
+
+    ManagerStandby(@NonNull Spawner spawner, int capacity) {
+        mSpawner = spawner;
+        mCapacity = capacity;
+    }
+
+    synchronized void fill() {
+        if (mClosed) return;
+        while (mStandbys.size() < mCapacity) {
+            mStandbys.addLast(mExecutor.submit(this::spawn));
+        }
+    }
+
+    /*
+     * 关闭后尚未开始的启动直接跳过，启动途中被关闭的ProcessManager在这里退出
+     * */
+    private @Nullable IProcessManager spawn() {
+        synchronized (this) {
+            if (mClosed) return null;
+        }
+        IProcessManager manager = mSpawner.spawn();
+        synchronized (this) {
+            if (!mClosed) return manager;
+        }
+        exitQuietly(manager);
+        return null;
+    }
+
+    /*
+     * 取出一个存活的备用ProcessManager，若备用进程仍在启动中则等待其完成，随后开始启动下一个
+     * */
+    @Nullable
+    IProcessManager take() {
+        try {
+            while (true) {
+                Future<IProcessManager> future;
+                synchronized (this) {
+                    if (mClosed) return null;
+                    future = mStandbys.pollFirst();
+                }
+                if (future == null) return null;
+                IProcessManager manager = getQuietly(future);
+                if (manager != null && manager.asBinder().isBinderAlive()) return manager;
+            }
+        } finally {
+            fill();
+        }
+    }
+
+    void close() {
+        Deque<Future<IProcessManager>> standbys;
+        synchronized (this) {
+            mClosed = true;
+            standbys = new ArrayDeque<>(mStandbys);
+            mStandbys.clear();
+        }
+        // 不取消：cancel对已在运行的启动也会返回true，启动出的ProcessManager会无人退出；
+        // 尚未开始的启动会因mClosed直接返回，正在进行的启动需要等待其完成后退出
+        for (Future<IProcessManager> future : standbys) {
+            exitQuietly(getQuietly(future));
+        }
+        mExecutor.shutdown();
+    }
+
+    private static void exitQuietly(@Nullable IProcessManager manager) {
+        if (manager == null) return;
+        try {
+            manager.exit(0);
+        } catch (RemoteException | RuntimeException ignored) {
+        }
+    }
+
+    private static @Nullable IProcessManager getQuietly(@NonNull Future<IProcessManager> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (RuntimeException ignored) {
+            return null;
+        }
+    }
+}
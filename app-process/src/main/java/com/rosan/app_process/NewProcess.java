@@ -2,10 +2,14 @@ package com.rosan.app_process;
 
 import android.annotation.SuppressLint;
 import android.app.ActivityThread;
+import android.app.ContentProviderHolder;
+import android.app.IActivityManager;
 import android.app.LoadedApk;
+import android.content.AttributionSource;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.ContextWrapper;
+import android.content.IContentProvider;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
@@ -14,17 +18,25 @@ import android.os.IBinder;
 import android.os.IInterface;
 import android.os.Looper;
 import android.os.Process;
+import android.os.RemoteException;
+import android.os.ServiceManager;
+import android.os.SystemClock;
+import android.system.Os;
+import android.system.OsConstants;
 import android.util.Log;
 
 import androidx.annotation.Keep;
 import androidx.annotation.NonNull;
 
+import com.android.internal.os.BinderInternal;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.lsposed.hiddenapibypass.HiddenApiBypass;
 
+import java.io.BufferedReader;
+import java.io.FileReader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -32,14 +44,18 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 public class NewProcess {
     private static final String TAG = "NewProcess";
 
     private static ActivityThread mActivityThread = null;
 
+    private static final long[] mTimestamps = new long[StartupReport.Phase.values().length];
+
     @Keep
     public static void main(String[] args) throws Throwable {
+        mark(StartupReport.Phase.MAIN_ENTERED);
         try {
             innerMain(args);
         } catch (Throwable e) {
@@ -53,22 +69,119 @@ public class NewProcess {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
             HiddenApiBypass.addHiddenApiExemptions("");
         }
-        Options options = new Options().addOption(Option.builder().longOpt("package").hasArg().required().type(String.class).build()).addOption(Option.builder().longOpt("token").hasArg().required().type(String.class).build()).addOption(Option.builder().longOpt("component").hasArg().required().type(String.class).build());
+        mark(StartupReport.Phase.HIDDEN_API_EXEMPTED);
+        Options options = new Options().addOption(Option.builder().longOpt("package").hasArg().required().type(String.class).build()).addOption(Option.builder().longOpt("token").hasArg().required().type(String.class).build()).addOption(Option.builder().longOpt("component").hasArg().required().type(String.class).build()).addOption(Option.builder().longOpt("handshake").hasArg().type(String.class).build()).addOption(Option.builder().longOpt("user").hasArg().type(String.class).build()).addOption(Option.builder().longOpt("binder-threads").hasArg().type(String.class).build());
         CommandLine cmdLine = new DefaultParser().parse(options, args);
         String packageName = cmdLine.getOptionValue("package");
         String token = cmdLine.getOptionValue("token");
         String component = cmdLine.getOptionValue("component");
+        AppProcess.Handshake handshake = AppProcess.Handshake.valueOf(cmdLine.getOptionValue("handshake", AppProcess.Handshake.BROADCAST.name()));
+        int userId = Integer.parseInt(cmdLine.getOptionValue("user", "0"));
+        int binderThreads = Integer.parseInt(cmdLine.getOptionValue("binder-threads", "0"));
         ComponentName componentName = ComponentName.unflattenFromString(component);
+        mark(StartupReport.Phase.ARGS_PARSED);
+
+        if (binderThreads > 0) setMaxBinderThreads(binderThreads);
+
+        getSystemContext();
+        mark(StartupReport.Phase.SYSTEM_CONTEXT_READY);
 
         Bundle bundle = new Bundle();
         IBinder binder = createBinder(componentName);
+        mark(StartupReport.Phase.BINDER_CREATED);
+        mTimestamps[StartupReport.Phase.PROCESS_STARTED.ordinal()] = readProcessStartTime();
         bundle.putBinder(NewProcessReceiver.EXTRA_NEW_PROCESS, binder);
         bundle.putString(NewProcessReceiver.EXTRA_TOKEN, token);
+        sendBinder(handshake, packageName, userId, bundle);
+        Looper.loop();
+    }
+
+    /*
+     * app_process在调用main之前已经启动了Binder线程池，这里只调整其上限，线程会在需要时创建
+     * */
+    private static void setMaxBinderThreads(int threads) {
+        try {
+            BinderInternal.setMaxThreads(threads);
+            ProcessManager.sMaxBinderThreads = threads;
+        } catch (Throwable e) {
+            Log.w(TAG, "set max binder threads failed", e);
+        }
+    }
+
+    private static void mark(StartupReport.Phase phase) {
+        mTimestamps[phase.ordinal()] = SystemClock.elapsedRealtimeNanos();
+    }
+
+    private static void putTimestamps(Bundle bundle) {
+        mark(StartupReport.Phase.HANDSHAKE_SENT);
+        bundle.putLongArray(NewProcessReceiver.EXTRA_TIMESTAMPS, mTimestamps);
+    }
+
+    /*
+     * 进程创建时间，/proc/self/stat的第22项，单位为自开机以来的时钟节拍
+     * */
+    private static long readProcessStartTime() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/stat"))) {
+            String stat = reader.readLine();
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long ticks = Long.parseLong(fields[19]);
+            long ticksPerSecond = Os.sysconf(OsConstants._SC_CLK_TCK);
+            return TimeUnit.SECONDS.toNanos(ticks) / ticksPerSecond;
+        } catch (Throwable ignored) {
+            return 0;
+        }
+    }
+
+    private static void sendBinder(AppProcess.Handshake handshake, String packageName, int userId, Bundle bundle) {
+        if (handshake == AppProcess.Handshake.PROVIDER) {
+            try {
+                putTimestamps(bundle);
+                if (sendBinderByProvider(packageName, userId, bundle)) return;
+            } catch (Throwable e) {
+                Log.w(TAG, "send binder by provider failed, fallback to broadcast", e);
+            }
+        }
+        putTimestamps(bundle);
         Intent intent = new Intent(NewProcessReceiver.ACTION_SEND_NEW_PROCESS)
                 .setPackage(packageName)
                 .putExtras(bundle);
         getSystemContext().sendBroadcast(intent);
-        Looper.loop();
+    }
+
+    /*
+     * 通过客户端的NewProcessProvider直接发送Binder，需要访问外部ContentProvider的权限（root、system）
+     * */
+    private static boolean sendBinderByProvider(String packageName, int userId, Bundle bundle) throws RemoteException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return false;
+        String authority = NewProcessProvider.authority(packageName);
+        IActivityManager activityManager = IActivityManager.Stub.asInterface(ServiceManager.getService(Context.ACTIVITY_SERVICE));
+        IBinder token = null;
+        ContentProviderHolder holder = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                ? activityManager.getContentProviderExternal(authority, userId, token, authority)
+                : activityManager.getContentProviderExternal(authority, userId, token);
+        if (holder == null || holder.provider == null) return false;
+        try {
+            IContentProvider provider = holder.provider;
+            String method = NewProcessProvider.METHOD_SEND_NEW_PROCESS;
+            Bundle reply;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                AttributionSource source = new AttributionSource.Builder(Process.myUid()).setPackageName(packageName).build();
+                reply = provider.call(source, authority, method, null, bundle);
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                reply = provider.call(packageName, null, authority, method, null, bundle);
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                reply = provider.call(packageName, authority, method, null, bundle);
+            } else {
+                reply = provider.call(packageName, method, null, bundle);
+            }
+            return reply != null && reply.getBoolean(NewProcessProvider.EXTRA_DELIVERED);
+        } finally {
+            try {
+                activityManager.removeContentProviderExternal(authority, token);
+            } catch (Throwable ignored) {
+            }
+        }
     }
 
     public static IBinder createBinder(ComponentName componentName) throws PackageManager.NameNotFoundException, NoSuchFieldException, InvocationTargetException, NoSuchMethodException, IllegalAccessException, ClassNotFoundException {
@@ -76,6 +189,9 @@ public class NewProcess {
     }
 
     public static IBinder createBinder(Context context, ComponentName componentName) throws PackageManager.NameNotFoundException, ClassNotFoundException {
+        // 本库自身的组件（例如ProcessManager）已在类路径中，无需打开应用的APK
+        if (ProcessManager.class.getName().equals(componentName.getClassName()))
+            return createBinder(context, NewProcess.class.getClassLoader(), componentName.getClassName());
         Context packageContext = getSystemContext().createPackageContext(componentName.getPackageName(), Context.CONTEXT_IGNORE_SECURITY | Context.CONTEXT_INCLUDE_CODE);
         ClassLoader classLoader = packageContext.getClassLoader();
         return createBinder(context, classLoader, componentName.getClassName());
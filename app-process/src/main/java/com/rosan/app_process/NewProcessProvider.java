@@ -0,0 +1,67 @@
+package com.rosan.app_process;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/*
+ * 子进程通过ContentProvider::call直接将Binder交给客户端，无需经过广播分发
+ * */
+public class NewProcessProvider extends ContentProvider {
+    public static String METHOD_SEND_NEW_PROCESS = "sendNewProcess";
+
+    public static String EXTRA_DELIVERED = "delivered";
+
+    public static @NonNull String authority(@NonNull String packageName) {
+        return packageName + ".app_process";
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        if (!METHOD_SEND_NEW_PROCESS.equals(method) || extras == null)
+            return super.call(method, arg, extras);
+        NewProcessReceiver.NewProcessResult result = NewProcessReceiver.NewProcessResult.fromExtras(extras, AppProcess.Handshake.PROVIDER);
+        Bundle reply = new Bundle();
+        reply.putBoolean(EXTRA_DELIVERED, result != null && NewProcessReceiver.deliver(result));
+        return reply;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection, @Nullable String[] selectionArgs) {
+        return 0;
+    }
+}
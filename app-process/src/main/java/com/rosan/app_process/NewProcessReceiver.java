@@ -10,36 +10,47 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Process;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.Exchanger;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 abstract class NewProcessReceiver extends BroadcastReceiver {
+    private static final Map<String, BlockingQueue<NewProcessResult>> sPending = new HashMap<>();
+
     public static IBinder start(Context context, AppProcess appProcess, ComponentName componentName) {
         final String token = UUID.randomUUID().toString();
 
-        final Exchanger<IBinder> exchanger = new Exchanger<>();
+        final BlockingQueue<NewProcessResult> queue = new ArrayBlockingQueue<>(1);
+        synchronized (sPending) {
+            sPending.put(token, queue);
+        }
 
+        // 子进程在其他方式失败时会回退到广播，因此始终注册广播接收器
         HandlerThread worker = new HandlerThread("IPCWorker");
         worker.start();
 
+        java.lang.Process process = null;
+        boolean succeeded = false;
+
         BroadcastReceiver receiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                if (token.equals(intent.getStringExtra(NewProcessReceiver.EXTRA_TOKEN))) {
-                    IBinder binder = intent.getExtras().getBinder(NewProcessReceiver.EXTRA_NEW_PROCESS);
-                    try {
-                        exchanger.exchange(binder);
-                    } catch (InterruptedException ignored) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
+                Bundle extras = intent.getExtras();
+                if (extras == null) return;
+                NewProcessResult result = NewProcessResult.fromExtras(extras, AppProcess.Handshake.BROADCAST);
+                if (result != null) deliver(result);
             }
         };
 
@@ -52,17 +63,43 @@ abstract class NewProcessReceiver extends BroadcastReceiver {
                 context.registerReceiver(receiver, filter, null, handler);
             }
 
-            appProcess.start(context.getPackageCodePath(), NewProcess.class, new String[]{
+            long spawnStarted = SystemClock.elapsedRealtimeNanos();
+            process = appProcess.start(appProcess.newProcessClassPath(context), NewProcess.class, new String[]{
                     "--package=" + context.getPackageName(),
                     "--token=" + token,
-                    "--component=" + componentName.flattenToString()
+                    "--component=" + componentName.flattenToString(),
+                    "--handshake=" + appProcess.getHandshake().name(),
+                    "--user=" + Process.myUid() / PER_USER_RANGE,
+                    "--binder-threads=" + appProcess.getBinderThreads()
             });
-
-            return exchanger.exchange(null, 15, TimeUnit.SECONDS);
-
-        } catch (TimeoutException | InterruptedException | IOException e) {
+            long processLaunched = SystemClock.elapsedRealtimeNanos();
+
+            NewProcessResult result = queue.poll(appProcess.getSpawnTimeoutMillis(), TimeUnit.MILLISECONDS);
+            if (result == null) return null;
+            succeeded = true;
+
+            long[] timestamps = result.getTimestamps();
+            timestamps[StartupReport.Phase.SPAWN_STARTED.ordinal()] = spawnStarted;
+            timestamps[StartupReport.Phase.PROCESS_LAUNCHED.ordinal()] = processLaunched;
+            timestamps[StartupReport.Phase.HANDSHAKE_RECEIVED.ordinal()] = result.getReceivedAt();
+            appProcess.onStartupReport(new StartupReport(componentName.flattenToString(), result.getHandshake(), timestamps));
+            return result.getBinder();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException e) {
             return null;
         } finally {
+            synchronized (sPending) {
+                sPending.remove(token);
+            }
+            // 超时或被取消时不再需要该进程
+            if (!succeeded && process != null) {
+                try {
+                    process.destroy();
+                } catch (Exception ignored) {
+                }
+            }
             try {
                 context.unregisterReceiver(receiver);
             } catch (Exception ignored) {
@@ -71,23 +108,36 @@ abstract class NewProcessReceiver extends BroadcastReceiver {
         }
     }
 
+    /*
+     * 将子进程发回的Binder交给正在等待的start()，重复送达（例如回退后）会被忽略
+     * */
+    static boolean deliver(@NonNull NewProcessResult result) {
+        BlockingQueue<NewProcessResult> queue;
+        synchronized (sPending) {
+            queue = sPending.get(result.getToken());
+        }
+        return queue != null && queue.offer(result);
+    }
+
+    private static final int PER_USER_RANGE = 100000;
+
     public static String ACTION_SEND_NEW_PROCESS = "com.rosan.app_process.send.new_process";
 
     public static String EXTRA_NEW_PROCESS = "new_process";
 
     public static String EXTRA_TOKEN = "token";
 
+    public static String EXTRA_TIMESTAMPS = "timestamps";
+
     @Override
     public void onReceive(Context context, Intent intent) {
         String action = intent.getAction();
         Bundle extras = intent.getExtras();
         if (extras == null) return;
         if (!Objects.equals(action, ACTION_SEND_NEW_PROCESS)) return;
-        String token = extras.getString(EXTRA_TOKEN);
-        if (token == null) return;
-        IBinder binder = extras.getBinder(EXTRA_NEW_PROCESS);
-        if (binder == null) return;
-        onReceive(new NewProcessResult(token, binder));
+        NewProcessResult result = NewProcessResult.fromExtras(extras, AppProcess.Handshake.BROADCAST);
+        if (result == null) return;
+        onReceive(result);
     }
 
     abstract void onReceive(NewProcessResult result);
@@ -97,9 +147,28 @@ abstract class NewProcessReceiver extends BroadcastReceiver {
 
         private final @NonNull IBinder mBinder;
 
-        NewProcessResult(@NonNull String token, @NonNull IBinder binder) {
+        private final @NonNull AppProcess.Handshake mHandshake;
+
+        private final long mReceivedAt;
+
+        private final @NonNull long[] mTimestamps;
+
+        NewProcessResult(@NonNull String token, @NonNull IBinder binder, @NonNull AppProcess.Handshake handshake, long receivedAt, @Nullable long[] timestamps) {
             mToken = token;
             mBinder = binder;
+            mHandshake = handshake;
+            mReceivedAt = receivedAt;
+            int size = StartupReport.Phase.values().length;
+            mTimestamps = timestamps != null ? Arrays.copyOf(timestamps, size) : new long[size];
+        }
+
+        static @Nullable NewProcessResult fromExtras(@NonNull Bundle extras, @NonNull AppProcess.Handshake handshake) {
+            long receivedAt = SystemClock.elapsedRealtimeNanos();
+            String token = extras.getString(EXTRA_TOKEN);
+            if (token == null) return null;
+            IBinder binder = extras.getBinder(EXTRA_NEW_PROCESS);
+            if (binder == null) return null;
+            return new NewProcessResult(token, binder, handshake, receivedAt, extras.getLongArray(EXTRA_TIMESTAMPS));
         }
 
         @NonNull
@@ -111,5 +180,22 @@ abstract class NewProcessReceiver extends BroadcastReceiver {
         public IBinder getBinder() {
             return mBinder;
         }
+
+        @NonNull
+        public AppProcess.Handshake getHandshake() {
+            return mHandshake;
+        }
+
+        public long getReceivedAt() {
+            return mReceivedAt;
+        }
+
+        /*
+         * 子进程记录的各启动阶段时间戳，下标为StartupReport.Phase::ordinal
+         * */
+        @NonNull
+        public long[] getTimestamps() {
+            return mTimestamps;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+package com.rosan.app_process;
+
+import android.os.Build;
+import android.os.Parcel;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+
+/*
+ * 将过大的Parcel内容转存到SharedMemory中，只传递其fd，以绕过约1MB的Binder缓冲区限制；
+ * 需要Android 8.1及以上，含有Binder或fd的Parcel无法marshall，这种情况下不转存
+ * */
+class ParcelSpill {
+    static final int REPLY_MAGIC = 0x41505350; // "APSP"
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1;
+    }
+
+    static @Nullable byte[] marshall(@NonNull Parcel parcel) {
+        try {
+            return parcel.marshall();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /*
+     * 写入 length、SharedMemory
+     * */
+    static void write(@NonNull byte[] bytes, @NonNull Parcel dest) {
+        SharedMemory memory = null;
+        try {
+            memory = SharedMemory.create("app_process_spill", bytes.length);
+            ByteBuffer buffer = memory.mapReadWrite();
+            try {
+                buffer.put(bytes);
+            } finally {
+                SharedMemory.unmap(buffer);
+            }
+            memory.setProtect(OsConstants.PROT_READ);
+            dest.writeInt(bytes.length);
+            // Parcel会dup其fd，写入后即可关闭
+            memory.writeToParcel(dest, 0);
+        } catch (ErrnoException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            if (memory != null) memory.close();
+        }
+    }
+
+    /*
+     * 读取write写入的内容，并还原到dest中
+     * */
+    static void read(@NonNull Parcel source, @NonNull Parcel dest) {
+        int length = source.readInt();
+        SharedMemory memory = SharedMemory.CREATOR.createFromParcel(source);
+        try {
+            ByteBuffer buffer = memory.mapReadOnly();
+            byte[] bytes = new byte[length];
+            try {
+                buffer.get(bytes);
+            } finally {
+                SharedMemory.unmap(buffer);
+            }
+            dest.setDataSize(0);
+            dest.unmarshall(bytes, 0, length);
+            dest.setDataPosition(0);
+        } catch (ErrnoException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            memory.close();
+        }
+    }
+
+    /*
+     * 在ProcessManager中，返回数据超过阈值时替换为 REPLY_MAGIC、nonce、转存内容
+     * */
+    static void spillReply(@NonNull Parcel reply, int threshold, int nonce) {
+        if (threshold <= 0 || !isSupported() || reply.dataSize() <= threshold) return;
+        byte[] bytes = marshall(reply);
+        if (bytes == null) return;
+        reply.setDataSize(0);
+        reply.setDataPosition(0);
+        reply.writeInt(REPLY_MAGIC);
+        reply.writeInt(nonce);
+        write(bytes, reply);
+    }
+
+    /*
+     * 在客户端中，若返回数据是本次调用转存的内容则还原，nonce用于区分恰好以REPLY_MAGIC开头的正常返回数据
+     * */
+    static void unspillReply(@NonNull Parcel reply, int nonce) {
+        if (reply.dataSize() >= 8) {
+            reply.setDataPosition(0);
+            if (reply.readInt() == REPLY_MAGIC && reply.readInt() == nonce) {
+                Parcel spilled = Parcel.obtain();
+                try {
+                    spilled.appendFrom(reply, reply.dataPosition(), reply.dataAvail());
+                    spilled.setDataPosition(0);
+                    read(spilled, reply);
+                } finally {
+                    spilled.recycle();
+                }
+                return;
+            }
+        }
+        reply.setDataPosition(0);
+    }
+}
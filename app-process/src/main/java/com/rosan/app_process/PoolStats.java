@@ -0,0 +1,47 @@
+package com.rosan.app_process;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/*
+ * 连接池中每个ProcessManager的未完成调用数（队列深度）与累计调用数，下标一一对应
+ * */
+public class PoolStats {
+    private final @NonNull AppProcess.PoolPolicy mPolicy;
+
+    private final @NonNull int[] mOutstanding;
+
+    private final @NonNull long[] mCalls;
+
+    PoolStats(@NonNull AppProcess.PoolPolicy policy, @NonNull int[] outstanding, @NonNull long[] calls) {
+        mPolicy = policy;
+        mOutstanding = outstanding;
+        mCalls = calls;
+    }
+
+    @NonNull
+    public AppProcess.PoolPolicy getPolicy() {
+        return mPolicy;
+    }
+
+    public int getSize() {
+        return mOutstanding.length;
+    }
+
+    public int getOutstanding(int index) {
+        return mOutstanding[index];
+    }
+
+    public long getCalls(int index) {
+        return mCalls[index];
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "PoolStats{policy=" + mPolicy
+                + ", outstanding=" + Arrays.toString(mOutstanding)
+                + ", calls=" + Arrays.toString(mCalls) + "}";
+    }
+}
@@ -13,20 +13,94 @@ import androidx.annotation.Keep;
 import androidx.annotation.Nullable;
 
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ProcessManager extends IProcessManager.Stub {
     // transact sub service binder before destroy
     public static int TRANSACT_ON_DESTROY_CODE = 0x00FF0000; // 16711680
 
-    private final List<Process> mServiceProcesses = new ArrayList<>();
+    static final int TRAILER_MAGIC = 0x41505452; // "APTR"
 
-    private final List<IBinder> mServiceIBinders = new ArrayList<>();
+    static final int TRAILER_MAGIC_SPILLED = 0x41505453; // "APTS"
+
+    // 句柄已失效时的返回数据为 REPLY_STALE_HANDLE、nonce
+    static final int REPLY_STALE_HANDLE = 0x41505348; // "APSH"
+
+    // 尾部最后的payloadSize与magic两个int
+    static final int TRAILER_TAIL_SIZE = 8;
+
+    public static int BATCH_STATUS_FALSE = 0;
+
+    public static int BATCH_STATUS_TRUE = 1;
+
+    public static int BATCH_STATUS_ERROR = 2;
+
+    // 进程退出后由RemoteProcessImpl的监视线程移除
+    private final Set<Process> mServiceProcesses = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    // 弱引用：本地Binder在所有远程引用释放后即可被回收，远程Binder在死亡时移除
+    private final Set<ServiceBinderReference> mServiceIBinders = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final ReferenceQueue<IBinder> mServiceIBinderQueue = new ReferenceQueue<>();
+
+    private final AtomicLong mReapedProcesses = new AtomicLong();
+
+    private final AtomicLong mReapedIBinders = new AtomicLong();
+
+    private final Map<Integer, BinderHandle> mHandles = new ConcurrentHashMap<>();
+
+    private final Map<IBinder, BinderHandle> mHandleBinders = new HashMap<>();
+
+    private final AtomicInteger mNextHandle = new AtomicInteger(0);
+
+    public static int ASYNC_TRANSACT_THREADS = 4;
+
+    // 由NewProcess按--binder-threads设置，默认为ProcessState的DEFAULT_MAX_BINDER_THREADS
+    static volatile int sMaxBinderThreads = 15;
+
+    private final AtomicInteger mActiveTransactions = new AtomicInteger();
+
+    private final AtomicInteger mPeakTransactions = new AtomicInteger();
+
+    private final AtomicLong mTotalTransactions = new AtomicLong();
+
+    private final AtomicLong mSaturatedTransactions = new AtomicLong();
+
+    private final AtomicLong mLockAcquisitions = new AtomicLong();
+
+    private final AtomicLong mLockWaitNanos = new AtomicLong();
+
+    private final TransactMetrics mMetrics = new TransactMetrics();
+
+    // 弱引用目标Binder，值不引用键
+    private final Map<IBinder, String> mDescriptors = new WeakHashMap<>();
+
+    private ExecutorService mAsyncExecutor = null;
+
+    // 每个目标Binder一个串行队列，同一目标的异步调用按收到的顺序执行，不同目标并行
+    private final Map<IBinder, TargetQueue> mAsyncQueues = new HashMap<>();
 
     private IBinder mClientBinder;
 
@@ -46,45 +120,79 @@ public class ProcessManager extends IProcessManager.Stub {
 
     @Override
     public void exit(int code) {
-        synchronized (mServiceProcesses) {
-            synchronized (mServiceIBinders) {
-                for (Process process : mServiceProcesses) {
-                    try {
-                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                            process.destroyForcibly();
-                        } else {
-                            process.destroy();
-                        }
-                    } catch (Throwable ignored) {
-                    }
-                }
-                for (IBinder iBinder : mServiceIBinders) {
-                    Parcel data = Parcel.obtain();
-                    Parcel reply = Parcel.obtain();
-                    try {
-                        iBinder.transact(TRANSACT_ON_DESTROY_CODE, data, reply, Binder.FLAG_ONEWAY);
-                    } catch (Throwable ignored) {
-                    } finally {
-                        data.recycle();
-                        reply.recycle();
-                    }
+        for (Process process : mServiceProcesses) {
+            try {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    process.destroyForcibly();
+                } else {
+                    process.destroy();
                 }
-                System.exit(code);
+            } catch (Throwable ignored) {
             }
         }
+        for (ServiceBinderReference reference : mServiceIBinders) {
+            IBinder iBinder = reference.get();
+            if (iBinder == null) continue;
+            Parcel data = Parcel.obtain();
+            Parcel reply = Parcel.obtain();
+            try {
+                iBinder.transact(TRANSACT_ON_DESTROY_CODE, data, reply, Binder.FLAG_ONEWAY);
+            } catch (Throwable ignored) {
+            } finally {
+                data.recycle();
+                reply.recycle();
+            }
+        }
+        System.exit(code);
     }
 
     private boolean targetTransact(IBinder binder, int code, Parcel data, Parcel reply, int flags) throws
             RemoteException {
+        // 与AppProcess::binderWithCleanCallingIdentity相同，但每次调用不再分配lambda
+        final long callingIdentity = Binder.clearCallingIdentity();
         try {
-            return AppProcess.binderWithCleanCallingIdentity(() -> binder.transact(code, data, reply, flags));
-        } catch (RemoteException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+            return binder.transact(code, data, reply, flags);
+        } finally {
+            Binder.restoreCallingIdentity(callingIdentity);
         }
     }
 
+    /*
+     * 转发到目标并按目标的(接口描述符, code)记录统计
+     * */
+    private boolean forward(IBinder binder, int code, Parcel data, Parcel reply, int flags) throws
+            RemoteException {
+        String descriptor = descriptorOf(binder);
+        int bytesIn = data.dataSize();
+        long start = System.nanoTime();
+        boolean result = false;
+        try {
+            result = targetTransact(binder, code, data, reply, flags);
+            return result;
+        } finally {
+            mMetrics.record(descriptor, code, bytesIn, reply != null ? reply.dataSize() : 0,
+                    System.nanoTime() - start, !result);
+        }
+    }
+
+    // 仅用于统计，每个目标Binder只查询一次，查询失败时记为空描述符
+    private String descriptorOf(IBinder binder) {
+        synchronized (mDescriptors) {
+            String descriptor = mDescriptors.get(binder);
+            if (descriptor != null) return descriptor;
+        }
+        String descriptor = null;
+        try {
+            descriptor = binder.getInterfaceDescriptor();
+        } catch (RemoteException | RuntimeException ignored) {
+        }
+        if (descriptor == null) return "";
+        synchronized (mDescriptors) {
+            mDescriptors.put(binder, descriptor);
+        }
+        return descriptor;
+    }
+
     @Override
     public IRemoteProcess remoteProcess(List<String> cmdList, Map<String, String> env, String directory) {
         ProcessBuilder builder = new ProcessBuilder().command(cmdList);
@@ -92,15 +200,32 @@ public class ProcessManager extends IProcessManager.Stub {
         if (env != null) builder.environment().putAll(env);
         try {
             Process process = builder.start();
+            mServiceProcesses.add(process);
+            return new RemoteProcessImpl(process, () -> {
+                if (mServiceProcesses.remove(process)) mReapedProcesses.incrementAndGet();
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-            synchronized (mServiceProcesses) {
-                mServiceProcesses.add(process);
-            }
-
-            return new RemoteProcessImpl(process);
+    @Override
+    public ExecResult exec(List<String> cmdList, Map<String, String> env, String directory, byte[] stdin, int maxOutputBytes, long timeoutMillis) {
+        ProcessBuilder builder = new ProcessBuilder().command(cmdList);
+        if (directory != null) builder = builder.directory(new File(directory));
+        if (env != null) builder.environment().putAll(env);
+        Process process;
+        try {
+            process = builder.start();
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
+        mServiceProcesses.add(process);
+        try {
+            return CommandExec.run(process, stdin, maxOutputBytes, timeoutMillis);
+        } finally {
+            if (mServiceProcesses.remove(process)) mReapedProcesses.incrementAndGet();
+        }
     }
 
     @Override
@@ -117,10 +242,7 @@ public class ProcessManager extends IProcessManager.Stub {
                 iBinder = NewProcess.createBinder(context, componentName);
             else iBinder = NewProcess.createBinder(componentName);
 
-            synchronized (mServiceIBinders) {
-                mServiceIBinders.add(iBinder);
-            }
-
+            addServiceIBinder(iBinder);
             return new ParcelableBinder(iBinder);
         } catch (PackageManager.NameNotFoundException | NoSuchFieldException |
                  InvocationTargetException | NoSuchMethodException | IllegalAccessException |
@@ -130,6 +252,33 @@ public class ProcessManager extends IProcessManager.Stub {
     }
 
 
+    private void addServiceIBinder(IBinder iBinder) {
+        reapServiceIBinders();
+        ServiceBinderReference reference = new ServiceBinderReference(iBinder, mServiceIBinderQueue);
+        mServiceIBinders.add(reference);
+        // 本地Binder不会死亡，linkToDeath对其无效
+        if (iBinder instanceof Binder) return;
+        try {
+            iBinder.linkToDeath(reference, 0);
+        } catch (RemoteException e) {
+            if (mServiceIBinders.remove(reference)) mReapedIBinders.incrementAndGet();
+        }
+    }
+
+    private void reapServiceIBinders() {
+        Reference<? extends IBinder> reference;
+        while ((reference = mServiceIBinderQueue.poll()) != null) {
+            if (mServiceIBinders.remove(reference)) mReapedIBinders.incrementAndGet();
+        }
+    }
+
+    @Override
+    public RegistryStats registryStats() {
+        reapServiceIBinders();
+        return new RegistryStats(mServiceProcesses.size(), mReapedProcesses.get(),
+                mServiceIBinders.size(), mReapedIBinders.get(), mHandles.size());
+    }
+
     @Override
     public void linkDeathTo(@Nullable ParcelableBinder pBinder) throws RemoteException {
         synchronized (this) {
@@ -144,9 +293,114 @@ public class ProcessManager extends IProcessManager.Stub {
         }
     }
 
+    @Override
+    public int registerBinder(ParcelableBinder pBinder) throws RemoteException {
+        IBinder binder = Objects.requireNonNull(pBinder.getBinder());
+        long waitStart = System.nanoTime();
+        synchronized (mHandleBinders) {
+            onLockAcquired(waitStart);
+            BinderHandle handle = mHandleBinders.get(binder);
+            if (handle == null) {
+                handle = new BinderHandle(mNextHandle.incrementAndGet(), binder);
+                binder.linkToDeath(handle, 0);
+                mHandleBinders.put(binder, handle);
+                mHandles.put(handle.mId, handle);
+            }
+            handle.mRefs++;
+            return handle.mId;
+        }
+    }
+
+    @Override
+    public void unregisterBinders(int[] handles) {
+        long waitStart = System.nanoTime();
+        synchronized (mHandleBinders) {
+            onLockAcquired(waitStart);
+            for (int id : handles) {
+                BinderHandle handle = mHandles.get(id);
+                if (handle == null || --handle.mRefs > 0) continue;
+                removeHandle(handle);
+            }
+        }
+    }
+
+    private void removeHandle(BinderHandle handle) {
+        mHandles.remove(handle.mId);
+        mHandleBinders.remove(handle.mBinder);
+        try {
+            handle.mBinder.unlinkToDeath(handle, 0);
+        } catch (Throwable ignored) {
+        }
+    }
+
+    private void onLockAcquired(long waitStart) {
+        mLockAcquisitions.incrementAndGet();
+        mLockWaitNanos.addAndGet(System.nanoTime() - waitStart);
+    }
+
+    @Override
+    public ThreadPoolStats threadPoolStats() {
+        return new ThreadPoolStats(sMaxBinderThreads, mActiveTransactions.get(), mPeakTransactions.get(),
+                mTotalTransactions.get(), mSaturatedTransactions.get(), mLockAcquisitions.get(), mLockWaitNanos.get());
+    }
+
     @Override
     public boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws
             RemoteException {
+        int active = mActiveTransactions.incrementAndGet();
+        mTotalTransactions.incrementAndGet();
+        // active包含当前这次，不会超过线程池大小，达到时线程池已被完全占用
+        if (active >= sMaxBinderThreads) mSaturatedTransactions.incrementAndGet();
+        int peak = mPeakTransactions.get();
+        while (active > peak && !mPeakTransactions.compareAndSet(peak, active))
+            peak = mPeakTransactions.get();
+        // 单纯转发的调用由forward按目标的接口描述符记录，这里不再按ProcessManager记录一次
+        if (code == Binder.FIRST_CALL_TRANSACTION + 2 || code == Binder.FIRST_CALL_TRANSACTION + 9
+                || code == Binder.FIRST_CALL_TRANSACTION + 11) {
+            try {
+                return dispatchTransact(code, data, reply, flags);
+            } finally {
+                mActiveTransactions.decrementAndGet();
+            }
+        }
+        int bytesIn = data.dataSize();
+        long start = System.nanoTime();
+        boolean result = false;
+        try {
+            result = dispatchTransact(code, data, reply, flags);
+            return result;
+        } finally {
+            mActiveTransactions.decrementAndGet();
+            mMetrics.record(getInterfaceDescriptor(), code, bytesIn, reply != null ? reply.dataSize() : 0,
+                    System.nanoTime() - start, !result);
+        }
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        ThreadPoolStats threadPoolStats = threadPoolStats();
+        writer.println("binder threads: max=" + threadPoolStats.getMaxThreads()
+                + " active=" + threadPoolStats.getActiveTransactions()
+                + " peak=" + threadPoolStats.getPeakTransactions()
+                + " total=" + threadPoolStats.getTotalTransactions()
+                + " saturated=" + threadPoolStats.getSaturatedTransactions());
+        RegistryStats registryStats = registryStats();
+        writer.println("registry: processes=" + registryStats.getProcesses()
+                + " reapedProcesses=" + registryStats.getReapedProcesses()
+                + " serviceBinders=" + registryStats.getServiceBinders()
+                + " reapedServiceBinders=" + registryStats.getReapedServiceBinders()
+                + " handles=" + registryStats.getBinderHandles());
+        writer.println("transactions:");
+        mMetrics.dump(writer);
+        writer.flush();
+    }
+
+    private boolean dispatchTransact(int code, Parcel data, Parcel reply, int flags) throws
+            RemoteException {
+        if (code == Binder.FIRST_CALL_TRANSACTION + 6) return onTransactBatch(data, reply);
+        if (code == Binder.FIRST_CALL_TRANSACTION + 9) return onTransactHandle(data, reply);
+        if (code == Binder.FIRST_CALL_TRANSACTION + 10) return onTransactProgram(data, reply);
+        if (code == Binder.FIRST_CALL_TRANSACTION + 11) return onTransactAsync(data);
         if (code != Binder.FIRST_CALL_TRANSACTION + 2)
             return super.onTransact(code, data, reply, flags);
         Parcel targetData = Parcel.obtain();
@@ -156,9 +410,253 @@ public class ProcessManager extends IProcessManager.Stub {
             int targetCode = data.readInt();
             int targetFlags = data.readInt();
             targetData.appendFrom(data, data.dataPosition(), data.dataAvail());
-            return targetTransact(binder, targetCode, targetData, reply, targetFlags);
+            return forward(binder, targetCode, targetData, reply, targetFlags);
         } finally {
             targetData.recycle();
         }
     }
+
+    /*
+     * data的尾部为 接口标识、handle、code、flags、spillThreshold、nonce、payloadSize、magic，
+     * 先从末尾读出payloadSize找到尾部的起点并校验接口标识；客户端没有复制data，
+     * 这里只将payload复制一次到从Parcel池中取出的targetData（不含尾部，AIDL生成的Stub在Android 13及以上会检查是否有未读取的数据）；
+     * magic为TRAILER_MAGIC_SPILLED时payload为ParcelSpill转存的内容，直接还原到targetData
+     * */
+    private boolean onTransactHandle(Parcel data, Parcel reply) throws RemoteException {
+        int size = data.dataSize();
+        if (size < TRAILER_TAIL_SIZE) throw new IllegalArgumentException("missing trailer");
+        data.setDataPosition(size - TRAILER_TAIL_SIZE);
+        int payloadSize = data.readInt();
+        int magic = data.readInt();
+        if ((magic != TRAILER_MAGIC && magic != TRAILER_MAGIC_SPILLED) || payloadSize < 0 || payloadSize > size - TRAILER_TAIL_SIZE)
+            throw new IllegalArgumentException("bad trailer");
+        data.setDataPosition(payloadSize);
+        data.enforceInterface(Objects.requireNonNull(this.asBinder().getInterfaceDescriptor()));
+        int id = data.readInt();
+        int targetCode = data.readInt();
+        int targetFlags = data.readInt();
+        int spillThreshold = data.readInt();
+        int nonce = data.readInt();
+        if (data.dataPosition() != size - TRAILER_TAIL_SIZE)
+            throw new IllegalArgumentException("bad trailer");
+        BinderHandle handle = mHandles.get(id);
+        if (handle == null) {
+            // RemoteException无法写入reply，改为写入带nonce的状态；oneway调用无法告知客户端
+            if (reply == null || nonce == 0) return false;
+            reply.writeInt(REPLY_STALE_HANDLE);
+            reply.writeInt(nonce);
+            return true;
+        }
+        Parcel targetData = Parcel.obtain();
+        if (magic == TRAILER_MAGIC_SPILLED) {
+            data.setDataPosition(0);
+            ParcelSpill.read(data, targetData);
+        } else {
+            targetData.appendFrom(data, 0, payloadSize);
+            targetData.setDataPosition(0);
+        }
+        try {
+            boolean result = forward(handle.mBinder, targetCode, targetData, reply, targetFlags);
+            if (reply != null && nonce != 0) ParcelSpill.spillReply(reply, spillThreshold, nonce);
+            return result;
+        } finally {
+            targetData.recycle();
+        }
+    }
+
+    /*
+     * 按顺序执行每一项，单项失败不影响后续项，每项的返回数据以 status、size、reply 的形式依次写入
+     * */
+    private boolean onTransactBatch(Parcel data, Parcel reply) throws RemoteException {
+        data.enforceInterface(Objects.requireNonNull(this.asBinder().getInterfaceDescriptor()));
+        int count = data.readInt();
+        for (int i = 0; i < count; i++) {
+            IBinder binder = data.readStrongBinder();
+            int targetCode = data.readInt();
+            int targetFlags = data.readInt();
+            int size = data.readInt();
+            int position = data.dataPosition();
+            Parcel targetData = Parcel.obtain();
+            Parcel targetReply = Parcel.obtain();
+            try {
+                targetData.appendFrom(data, position, size);
+                data.setDataPosition(position + size);
+                int status;
+                String error = null;
+                try {
+                    status = forward(binder, targetCode, targetData, targetReply, targetFlags)
+                            ? BATCH_STATUS_TRUE : BATCH_STATUS_FALSE;
+                } catch (RemoteException | RuntimeException e) {
+                    status = BATCH_STATUS_ERROR;
+                    error = e.toString();
+                    targetReply.setDataSize(0);
+                }
+                reply.writeInt(status);
+                reply.writeInt(targetReply.dataSize());
+                reply.appendFrom(targetReply, 0, targetReply.dataSize());
+                if (status == BATCH_STATUS_ERROR) reply.writeString(error);
+            } finally {
+                targetData.recycle();
+                targetReply.recycle();
+            }
+        }
+        return true;
+    }
+
+    private synchronized ExecutorService requireAsyncExecutor() {
+        if (mAsyncExecutor != null) return mAsyncExecutor;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(ASYNC_TRANSACT_THREADS, ASYNC_TRANSACT_THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "ProcessManagerAsync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        mAsyncExecutor = executor;
+        return executor;
+    }
+
+    /*
+     * 客户端以oneway方式调用，同一Binder上的oneway调用会被依次派发，
+     * 因此转发交给线程池执行，避免后续调用排在前一个调用之后，结果以oneway方式发回回调Binder；
+     * 同一目标的调用在该目标的串行队列中按收到的顺序执行
+     * */
+    private boolean onTransactAsync(Parcel data) {
+        data.enforceInterface(Objects.requireNonNull(this.asBinder().getInterfaceDescriptor()));
+        IBinder callback = data.readStrongBinder();
+        int id = data.readInt();
+        IBinder binder = data.readStrongBinder();
+        int targetCode = data.readInt();
+        int targetFlags = data.readInt();
+        Parcel targetData = Parcel.obtain();
+        targetData.appendFrom(data, data.dataPosition(), data.dataAvail());
+        try {
+            executeAsync(binder, () -> {
+                Parcel targetReply = Parcel.obtain();
+                try {
+                    int status;
+                    String error = null;
+                    try {
+                        status = forward(binder, targetCode, targetData, targetReply, targetFlags)
+                                ? BATCH_STATUS_TRUE : BATCH_STATUS_FALSE;
+                    } catch (RemoteException | RuntimeException e) {
+                        status = BATCH_STATUS_ERROR;
+                        error = e.toString();
+                    }
+                    replyAsync(callback, id, status, error, targetReply);
+                } finally {
+                    targetData.recycle();
+                    targetReply.recycle();
+                }
+            });
+        } catch (RuntimeException e) {
+            // 线程池已拒绝，任务不会执行
+            targetData.recycle();
+            replyAsync(callback, id, BATCH_STATUS_ERROR, e.toString(), null);
+        }
+        return true;
+    }
+
+    private void replyAsync(IBinder callback, int id, int status, @Nullable String error, @Nullable Parcel reply) {
+        Parcel callbackData = Parcel.obtain();
+        try {
+            callbackData.writeInt(id);
+            callbackData.writeInt(status);
+            if (status == BATCH_STATUS_ERROR) callbackData.writeString(error);
+            else if (reply != null) callbackData.appendFrom(reply, 0, reply.dataSize());
+            callback.transact(Binder.FIRST_CALL_TRANSACTION, callbackData, null, Binder.FLAG_ONEWAY);
+        } catch (Throwable ignored) {
+            // 客户端已死亡
+        } finally {
+            callbackData.recycle();
+        }
+    }
+
+    private void executeAsync(IBinder target, Runnable task) {
+        synchronized (mAsyncQueues) {
+            TargetQueue queue = mAsyncQueues.get(target);
+            if (queue == null) {
+                queue = new TargetQueue(target);
+                mAsyncQueues.put(target, queue);
+            }
+            queue.mTasks.addLast(task);
+            if (queue.mRunning) return;
+            queue.mRunning = true;
+            try {
+                requireAsyncExecutor().execute(queue);
+            } catch (RuntimeException e) {
+                // 队列此前为空，只有当前任务
+                mAsyncQueues.remove(target);
+                throw e;
+            }
+        }
+    }
+
+    private boolean onTransactProgram(Parcel data, Parcel reply) throws RemoteException {
+        data.enforceInterface(Objects.requireNonNull(this.asBinder().getInterfaceDescriptor()));
+        TransactProgram.execute(data, reply, this::forward);
+        return true;
+    }
+
+    private class ServiceBinderReference extends WeakReference<IBinder> implements DeathRecipient {
+        ServiceBinderReference(IBinder referent, ReferenceQueue<? super IBinder> queue) {
+            super(referent, queue);
+        }
+
+        @Override
+        public void binderDied() {
+            if (mServiceIBinders.remove(this)) mReapedIBinders.incrementAndGet();
+        }
+    }
+
+    private class TargetQueue implements Runnable {
+        private final IBinder mTarget;
+
+        private final Deque<Runnable> mTasks = new ArrayDeque<>();
+
+        private boolean mRunning = false;
+
+        TargetQueue(IBinder target) {
+            mTarget = target;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task;
+                synchronized (mAsyncQueues) {
+                    task = mTasks.pollFirst();
+                    if (task == null) {
+                        mRunning = false;
+                        mAsyncQueues.remove(mTarget);
+                        return;
+                    }
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException ignored) {
+                }
+            }
+        }
+    }
+
+    private class BinderHandle implements DeathRecipient {
+        private final int mId;
+
+        private final IBinder mBinder;
+
+        private int mRefs = 0;
+
+        BinderHandle(int id, IBinder binder) {
+            mId = id;
+            mBinder = binder;
+        }
+
+        @Override
+        public void binderDied() {
+            synchronized (mHandleBinders) {
+                if (mHandles.get(mId) == this) removeHandle(this);
+            }
+        }
+    }
 }
@@ -0,0 +1,96 @@
+package com.rosan.app_process;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+
+/*
+ * ProcessManager中登记的进程与Binder数量，以及已被自动回收的数量
+ * */
+public class RegistryStats implements Parcelable {
+    public static final Creator<RegistryStats> CREATOR = new Creator<RegistryStats>() {
+        @Override
+        public RegistryStats createFromParcel(Parcel in) {
+            return new RegistryStats(in);
+        }
+
+        @Override
+        public RegistryStats[] newArray(int size) {
+            return new RegistryStats[size];
+        }
+    };
+
+    private final int processes;
+
+    private final long reapedProcesses;
+
+    private final int serviceBinders;
+
+    private final long reapedServiceBinders;
+
+    private final int binderHandles;
+
+    public RegistryStats(int processes, long reapedProcesses, int serviceBinders, long reapedServiceBinders, int binderHandles) {
+        this.processes = processes;
+        this.reapedProcesses = reapedProcesses;
+        this.serviceBinders = serviceBinders;
+        this.reapedServiceBinders = reapedServiceBinders;
+        this.binderHandles = binderHandles;
+    }
+
+    public RegistryStats(Parcel parcel) {
+        this.processes = parcel.readInt();
+        this.reapedProcesses = parcel.readLong();
+        this.serviceBinders = parcel.readInt();
+        this.reapedServiceBinders = parcel.readLong();
+        this.binderHandles = parcel.readInt();
+    }
+
+    // 仍在运行的remoteProcess进程
+    public int getProcesses() {
+        return processes;
+    }
+
+    public long getReapedProcesses() {
+        return reapedProcesses;
+    }
+
+    // 仍被引用的serviceBinder组件
+    public int getServiceBinders() {
+        return serviceBinders;
+    }
+
+    public long getReapedServiceBinders() {
+        return reapedServiceBinders;
+    }
+
+    // registerBinder登记的句柄
+    public int getBinderHandles() {
+        return binderHandles;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(@NonNull Parcel dest, int flags) {
+        dest.writeInt(processes);
+        dest.writeLong(reapedProcesses);
+        dest.writeInt(serviceBinders);
+        dest.writeLong(reapedServiceBinders);
+        dest.writeInt(binderHandles);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "RegistryStats{processes=" + processes
+                + ", reapedProcesses=" + reapedProcesses
+                + ", serviceBinders=" + serviceBinders
+                + ", reapedServiceBinders=" + reapedServiceBinders
+                + ", binderHandles=" + binderHandles + "}";
+    }
+}
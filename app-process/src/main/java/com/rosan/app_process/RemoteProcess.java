@@ -1,5 +1,6 @@
 package com.rosan.app_process;
 
+import android.os.IBinder;
 import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
 
@@ -7,12 +8,47 @@ import androidx.annotation.NonNull;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+/*
+ * 远程进程退出时由IRemoteProcessCallback通知，waitFor、exitValue与isAlive均使用本地状态，
+ * 等待期间不占用ProcessManager的Binder线程；ProcessManager死亡时视为进程以-1退出
+ * */
 public class RemoteProcess extends Process {
     private final @NonNull IRemoteProcess mProcess;
 
+    private final CountDownLatch mExited = new CountDownLatch(1);
+
+    private volatile int mExitValue = 0;
+
+    private final IRemoteProcessCallback mCallback = new IRemoteProcessCallback.Stub() {
+        @Override
+        public void onExit(int exitValue) {
+            RemoteProcess.this.onExit(exitValue);
+        }
+    };
+
+    private final IBinder.DeathRecipient mDeathRecipient = () -> onExit(-1);
+
     public RemoteProcess(@NonNull IRemoteProcess process) {
         mProcess = process;
+        try {
+            mProcess.asBinder().linkToDeath(mDeathRecipient, 0);
+            mProcess.setExitCallback(mCallback);
+        } catch (RemoteException e) {
+            onExit(-1);
+        }
+    }
+
+    private synchronized void onExit(int exitValue) {
+        if (mExited.getCount() == 0) return;
+        mExitValue = exitValue;
+        mExited.countDown();
+        try {
+            mProcess.asBinder().unlinkToDeath(mDeathRecipient, 0);
+        } catch (RuntimeException ignored) {
+        }
     }
 
     @Override
@@ -43,27 +79,51 @@ public class RemoteProcess extends Process {
     }
 
     @Override
-    public int waitFor() {
+    public int waitFor() throws InterruptedException {
+        mExited.await();
+        return mExitValue;
+    }
+
+    @Override
+    public boolean waitFor(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        return mExited.await(timeout, unit);
+    }
+
+    @Override
+    public boolean isAlive() {
+        return mExited.getCount() != 0;
+    }
+
+    @Override
+    public int exitValue() {
+        if (isAlive()) throw new IllegalThreadStateException("process hasn't exited");
+        return mExitValue;
+    }
+
+    @Override
+    public void destroy() {
         try {
-            return mProcess.waitFor();
+            mProcess.destroy();
         } catch (RemoteException e) {
             throw new RuntimeException(e);
         }
     }
 
+    @NonNull
     @Override
-    public int exitValue() {
+    public Process destroyForcibly() {
         try {
-            return mProcess.exitValue();
+            mProcess.destroyForcibly();
         } catch (RemoteException e) {
             throw new RuntimeException(e);
         }
+        return this;
     }
 
-    @Override
-    public void destroy() {
+    // 远程进程的pid，无法获取时返回-1
+    public long pid() {
         try {
-            mProcess.destroy();
+            return mProcess.pid();
         } catch (RemoteException e) {
             throw new RuntimeException(e);
         }
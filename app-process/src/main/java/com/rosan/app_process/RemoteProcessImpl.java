@@ -1,17 +1,54 @@
 package com.rosan.app_process;
 
+import android.os.Build;
 import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class RemoteProcessImpl extends IRemoteProcess.Stub {
+    private static final ExecutorService sWatchers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ProcessWatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /*
+     * 回退方式下转发流的线程，每个流各占一个线程直到流结束，因此不能排队：
+     * 排队的流无人读取，子进程写满管道后会一直阻塞；空闲线程60秒后退出
+     * */
+    private static final ExecutorService sPumps = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ProcessPump");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final @NonNull Process mProcess;
 
+    private final @Nullable Runnable mOnExit;
+
+    private final List<IRemoteProcessCallback> mExitCallbacks = new ArrayList<>();
+
+    private boolean mExited = false;
+
+    private int mExitValue = 0;
+
     private ParcelFileDescriptor mInputStream;
 
     private ParcelFileDescriptor mOutputStream;
@@ -19,7 +56,76 @@ public class RemoteProcessImpl extends IRemoteProcess.Stub {
     private ParcelFileDescriptor mErrorStream;
 
     public RemoteProcessImpl(@NonNull Process process) {
+        this(process, null);
+    }
+
+    /*
+     * 由监视线程等待进程退出，退出后回调onExit
+     * */
+    public RemoteProcessImpl(@NonNull Process process, @Nullable Runnable onExit) {
         mProcess = process;
+        mOnExit = onExit;
+        sWatchers.execute(this::watch);
+    }
+
+    private void watch() {
+        while (true) {
+            try {
+                mProcess.waitFor();
+                break;
+            } catch (InterruptedException ignored) {
+            }
+        }
+        int exitValue = mProcess.exitValue();
+        List<IRemoteProcessCallback> callbacks;
+        synchronized (mExitCallbacks) {
+            mExited = true;
+            mExitValue = exitValue;
+            callbacks = new ArrayList<>(mExitCallbacks);
+            mExitCallbacks.clear();
+        }
+        for (IRemoteProcessCallback callback : callbacks) {
+            notifyExit(callback, exitValue);
+        }
+        if (mOnExit != null) mOnExit.run();
+    }
+
+    private static void notifyExit(IRemoteProcessCallback callback, int exitValue) {
+        try {
+            callback.onExit(exitValue);
+        } catch (RemoteException | RuntimeException ignored) {
+        }
+    }
+
+    @Override
+    public void setExitCallback(IRemoteProcessCallback callback) {
+        int exitValue;
+        synchronized (mExitCallbacks) {
+            if (!mExited) {
+                mExitCallbacks.add(callback);
+                return;
+            }
+            exitValue = mExitValue;
+        }
+        notifyExit(callback, exitValue);
+    }
+
+    @Override
+    public void destroyForcibly() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) mProcess.destroyForcibly();
+        else mProcess.destroy();
+    }
+
+    @Override
+    public int pid() {
+        // UNIXProcess（Android 7.0起）与旧版ProcessManager.ProcessImpl中均有int pid字段
+        try {
+            Field field = mProcess.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getInt(mProcess);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
     }
 
     @Override
@@ -75,25 +181,74 @@ public class RemoteProcessImpl extends IRemoteProcess.Stub {
     }
 
     public static ParcelFileDescriptor parcelable(InputStream inputStream) throws IOException {
+        ParcelFileDescriptor direct = direct(inputStream);
+        if (direct != null) return direct;
         ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
         transferThread(inputStream, new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]));
         return pipe[0];
     }
 
     public static ParcelFileDescriptor parcelable(OutputStream outputStream) throws IOException {
+        ParcelFileDescriptor direct = direct(outputStream);
+        if (direct != null) return direct;
         ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
         transferThread(new ParcelFileDescriptor.AutoCloseInputStream(pipe[0]), outputStream);
         return pipe[1];
     }
 
+    /*
+     * 直接将进程的管道交给客户端：从Process的流中取出底层的fd并dup，
+     * 随后关闭Java流，避免进程退出时被其读取剩余的输出；无法取出时返回null
+     * */
+    private static @Nullable ParcelFileDescriptor direct(Closeable stream) {
+        FileDescriptor fd = unwrapFileDescriptor(stream);
+        if (fd == null || !fd.valid()) return null;
+        ParcelFileDescriptor pfd;
+        try {
+            pfd = ParcelFileDescriptor.dup(fd);
+        } catch (IOException e) {
+            return null;
+        }
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+        }
+        return pfd;
+    }
+
+    private static @Nullable FileDescriptor unwrapFileDescriptor(Object stream) {
+        Object current = stream;
+        // Process的流通常是包装了FileInputStream/FileOutputStream的BufferedInputStream/BufferedOutputStream
+        for (int i = 0; i < 4 && current != null; i++) {
+            try {
+                if (current instanceof FileInputStream) return ((FileInputStream) current).getFD();
+                if (current instanceof FileOutputStream) return ((FileOutputStream) current).getFD();
+                Field field;
+                if (current instanceof FilterInputStream)
+                    field = FilterInputStream.class.getDeclaredField("in");
+                else if (current instanceof FilterOutputStream)
+                    field = FilterOutputStream.class.getDeclaredField("out");
+                else return null;
+                field.setAccessible(true);
+                current = field.get(current);
+            } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * 无法直接传递fd时的回退：所有流共用一个有上限的线程池，仅在没有更多可读数据时flush
+     * */
     public static void transferThread(InputStream inputStream, OutputStream outputStream) {
-        new Thread(() -> {
+        sPumps.execute(() -> {
             byte[] bytes = new byte[8192];
             int len = 0;
             try {
                 while ((len = inputStream.read(bytes)) > 0) {
                     outputStream.write(bytes, 0, len);
-                    outputStream.flush();
+                    if (inputStream.available() <= 0) outputStream.flush();
                 }
             } catch (IOException e) {
                 e.printStackTrace();
@@ -109,6 +264,6 @@ public class RemoteProcessImpl extends IRemoteProcess.Stub {
                     e.printStackTrace();
                 }
             }
-        }).start();
+        });
     }
 }
@@ -0,0 +1,10 @@
+package com.rosan.app_process;
+
+/*
+ * ProcessManager中已找不到该句柄（目标Binder死亡后被移除等），由BinderWrapper重新注册
+ * */
+class StaleHandleException extends IllegalStateException {
+    StaleHandleException(int handle) {
+        super("stale binder handle " + handle);
+    }
+}
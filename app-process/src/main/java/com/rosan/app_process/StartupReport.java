@@ -0,0 +1,108 @@
+package com.rosan.app_process;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 一次子进程启动的各阶段时间戳（SystemClock.elapsedRealtimeNanos，跨进程一致），未记录的阶段为0
+ * */
+public class StartupReport {
+    public enum Phase {
+        // 客户端开始启动进程
+        SPAWN_STARTED,
+        // 客户端启动进程（su或远程ProcessManager）的调用已返回
+        PROCESS_LAUNCHED,
+        // 子进程被创建的时间（来自/proc/self/stat），精度为一个时钟周期（通常为10ms），可能早于PROCESS_LAUNCHED
+        PROCESS_STARTED,
+        // 虚拟机启动完成，进入NewProcess::main
+        MAIN_ENTERED,
+        HIDDEN_API_EXEMPTED,
+        ARGS_PARSED,
+        // ActivityThread::systemMain完成
+        SYSTEM_CONTEXT_READY,
+        BINDER_CREATED,
+        HANDSHAKE_SENT,
+        HANDSHAKE_RECEIVED
+    }
+
+    public interface Listener {
+        void onStartupReport(@NonNull StartupReport report);
+    }
+
+    private final @NonNull String mComponent;
+
+    private final @NonNull AppProcess.Handshake mHandshake;
+
+    private final @NonNull long[] mTimestamps;
+
+    StartupReport(@NonNull String component, @NonNull AppProcess.Handshake handshake, @NonNull long[] timestamps) {
+        mComponent = component;
+        mHandshake = handshake;
+        mTimestamps = Arrays.copyOf(timestamps, Phase.values().length);
+    }
+
+    @NonNull
+    public String getComponent() {
+        return mComponent;
+    }
+
+    @NonNull
+    public AppProcess.Handshake getHandshake() {
+        return mHandshake;
+    }
+
+    public long getTimestamp(@NonNull Phase phase) {
+        return mTimestamps[phase.ordinal()];
+    }
+
+    /*
+     * 从上一个已记录的阶段到该阶段的耗时，该阶段未记录时返回-1；
+     * 各阶段的时间不早于之前的阶段（PROCESS_STARTED精度较低），因此耗时不会为负数
+     * */
+    public long getPhaseNanos(@NonNull Phase phase) {
+        if (mTimestamps[phase.ordinal()] == 0) return -1;
+        for (int i = phase.ordinal() - 1; i >= 0; i--) {
+            if (mTimestamps[i] != 0) return clampedTimestamp(phase.ordinal()) - clampedTimestamp(i);
+        }
+        return -1;
+    }
+
+    private long clampedTimestamp(int index) {
+        long timestamp = 0;
+        for (int i = 0; i <= index; i++) {
+            timestamp = Math.max(timestamp, mTimestamps[i]);
+        }
+        return timestamp;
+    }
+
+    /*
+     * 子进程发出Binder到客户端收到Binder之间的耗时，用于比较不同Handshake方式，未记录时返回-1
+     * */
+    public long getHandshakeNanos() {
+        long sent = getTimestamp(Phase.HANDSHAKE_SENT);
+        long received = getTimestamp(Phase.HANDSHAKE_RECEIVED);
+        if (sent == 0 || received == 0) return -1;
+        return received - sent;
+    }
+
+    public long getTotalNanos() {
+        return getTimestamp(Phase.HANDSHAKE_RECEIVED) - getTimestamp(Phase.SPAWN_STARTED);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("StartupReport{component=").append(mComponent)
+                .append(", handshake=").append(mHandshake)
+                .append(", total=").append(TimeUnit.NANOSECONDS.toMillis(getTotalNanos())).append("ms");
+        for (Phase phase : Phase.values()) {
+            long nanos = getPhaseNanos(phase);
+            if (nanos < 0) continue;
+            builder.append(", ").append(phase.name().toLowerCase()).append("=")
+                    .append(TimeUnit.NANOSECONDS.toMicros(nanos)).append("us");
+        }
+        return builder.append("}").toString();
+    }
+}
@@ -0,0 +1,371 @@
+package com.rosan.app_process;
+
+import android.os.Build;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * 一个长期存活的终端（例如su），命令以帧的形式依次写入，每条命令拥有独立的stdout/stderr边界与退出码
+ * */
+class TerminalSession implements Closeable {
+    // waitFor时读取剩余输出及ping时等待回显的线程，所有终端共用
+    private static final ExecutorService sReaders = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "TerminalReader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final @NonNull Process mProcess;
+
+    private final @NonNull OutputStream mInput;
+
+    private final @NonNull InputStream mOutput;
+
+    private final @NonNull InputStream mError;
+
+    private final @NonNull byte[] mDelimiter;
+
+    private long mLastUsed = SystemClock.elapsedRealtime();
+
+    private volatile boolean mBroken = false;
+
+    private TerminalSession(@NonNull Process process) {
+        mProcess = process;
+        mInput = process.getOutputStream();
+        mOutput = new BufferedInputStream(process.getInputStream());
+        mError = new BufferedInputStream(process.getErrorStream());
+        mDelimiter = ("\n" + UUID.randomUUID().toString().replace("-", "")).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static @NonNull TerminalSession open(@NonNull List<String> terminal) throws IOException {
+        return new TerminalSession(new ProcessBuilder().command(terminal).start());
+    }
+
+    long getLastUsed() {
+        return mLastUsed;
+    }
+
+    boolean isHealthy() {
+        if (mBroken) return false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) return mProcess.isAlive();
+        try {
+            mProcess.exitValue();
+            return false;
+        } catch (IllegalThreadStateException ignored) {
+            return true;
+        }
+    }
+
+    /*
+     * 向终端发送echo并等待回显，timeoutMillis内未收到或收到其他输出时视为终端已卡死；
+     * 只能在两条命令之间调用
+     * */
+    boolean ping(long timeoutMillis) {
+        if (!isHealthy()) return false;
+        String token = UUID.randomUUID().toString().replace("-", "");
+        byte[] expected = (token + "\n").getBytes(StandardCharsets.UTF_8);
+        // 阻塞读取交给共用线程，超时后终端会被关闭，读取随之结束
+        Future<Boolean> echoed = sReaders.submit(() -> {
+            for (byte b : expected) {
+                if (mOutput.read() != (b & 0xff)) return false;
+            }
+            return true;
+        });
+        try {
+            mInput.write(("printf '%s\\n' " + token + "\n").getBytes(StandardCharsets.UTF_8));
+            mInput.flush();
+            if (echoed.get(timeoutMillis, TimeUnit.MILLISECONDS)) return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | ExecutionException | TimeoutException ignored) {
+        }
+        mBroken = true;
+        return false;
+    }
+
+    /*
+     * 在当前终端中执行一条命令，命令结束且stdout/stderr均被读取完毕后回调onFinish
+     * */
+    @NonNull
+    Process exec(@NonNull AppProcess.ProcessParams params, @NonNull Runnable onFinish) throws IOException {
+        String marker = new String(mDelimiter, 1, mDelimiter.length - 1, StandardCharsets.UTF_8);
+        StringBuilder buffer = new StringBuilder("(");
+        Map<String, String> env = params.getEnv();
+        if (env != null) {
+            for (Map.Entry<String, String> entry : env.entrySet()) {
+                buffer.append("export ").append(entry.getKey()).append("=").append(quote(entry.getValue())).append("\n");
+            }
+        }
+        String directory = params.getDirectory();
+        if (directory != null) buffer.append("cd ").append(quote(directory)).append(" || exit 127\n");
+        int count = 0;
+        for (String element : params.getCmdList()) {
+            if (++count > 1) buffer.append(" ");
+            buffer.append(element);
+        }
+        buffer.append("\n) </dev/null\n");
+        buffer.append("printf '\\n%s %d\\n' ").append(marker).append(" $?\n");
+        buffer.append("printf '\\n%s\\n' ").append(marker).append(" >&2\n");
+
+        SessionProcess process = new SessionProcess(onFinish);
+        try {
+            mInput.write(buffer.toString().getBytes(StandardCharsets.UTF_8));
+            mInput.flush();
+        } catch (IOException e) {
+            mBroken = true;
+            throw e;
+        }
+        return process;
+    }
+
+    @Override
+    public void close() {
+        mBroken = true;
+        mProcess.destroy();
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    private class SessionProcess extends Process {
+        private final @NonNull Runnable mOnFinish;
+
+        private final @NonNull FrameInputStream mFrameOutput;
+
+        private final @NonNull FrameInputStream mFrameError;
+
+        private boolean mFinished = false;
+
+        private int mExitValue = -1;
+
+        private CountDownLatch mDrained = null;
+
+        SessionProcess(@NonNull Runnable onFinish) {
+            mOnFinish = onFinish;
+            mFrameOutput = new FrameInputStream(mOutput, this, true);
+            mFrameError = new FrameInputStream(mError, this, false);
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("stdin is not attached to pooled terminal sessions.");
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return mFrameOutput;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return mFrameError;
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            drain().await();
+            return exitValue();
+        }
+
+        @Override
+        public boolean waitFor(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+            return drain().await(timeout, unit);
+        }
+
+        /*
+         * 在共用线程中读取stdout与stderr的剩余内容，两者都读到分隔符后latch归零
+         * */
+        private synchronized @NonNull CountDownLatch drain() {
+            if (mDrained != null) return mDrained;
+            CountDownLatch drained = new CountDownLatch(2);
+            mDrained = drained;
+            sReaders.execute(() -> {
+                mFrameOutput.drain();
+                drained.countDown();
+            });
+            sReaders.execute(() -> {
+                mFrameError.drain();
+                drained.countDown();
+            });
+            return drained;
+        }
+
+        @Override
+        public synchronized int exitValue() {
+            if (!mFrameOutput.isEnded() || !mFrameError.isEnded())
+                throw new IllegalThreadStateException("process hasn't exited");
+            return mExitValue;
+        }
+
+        @Override
+        public void destroy() {
+            close();
+        }
+
+        synchronized void onFrameEnd(boolean output, int exitValue) {
+            if (output) mExitValue = exitValue;
+            if (mFinished || !mFrameOutput.isEnded() || !mFrameError.isEnded()) return;
+            mFinished = true;
+            mLastUsed = SystemClock.elapsedRealtime();
+            mOnFinish.run();
+        }
+    }
+
+    /*
+     * 读取至分隔符为止，分隔符之后的同一行为退出码（仅stdout）
+     * */
+    private class FrameInputStream extends InputStream {
+        private final @NonNull InputStream mIn;
+
+        private final @NonNull SessionProcess mOwner;
+
+        private final boolean mIsOutput;
+
+        private byte[] mPending = new byte[mDelimiter.length + 1];
+
+        private int mPendingPos = 0;
+
+        private int mPendingLen = 0;
+
+        private int mMatched = 0;
+
+        private volatile boolean mEnded = false;
+
+        FrameInputStream(@NonNull InputStream in, @NonNull SessionProcess owner, boolean isOutput) {
+            mIn = in;
+            mOwner = owner;
+            mIsOutput = isOutput;
+        }
+
+        boolean isEnded() {
+            return mEnded;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            while (true) {
+                if (mPendingPos < mPendingLen) return mPending[mPendingPos++] & 0xff;
+                if (mEnded) return -1;
+                int b = mIn.read();
+                if (b == -1) {
+                    mBroken = true;
+                    int matched = mMatched;
+                    mMatched = 0;
+                    pend(mDelimiter, matched, -1);
+                    finish(-1);
+                    continue;
+                }
+                if (b == (mDelimiter[mMatched] & 0xff)) {
+                    if (++mMatched < mDelimiter.length) continue;
+                    mMatched = 0;
+                    finish(readTrailer());
+                    continue;
+                }
+                if (mMatched == 0) return b;
+                // 分隔符只以'\n'开头，不会与自身重叠，因此只需重新检查当前字节
+                int matched = mMatched;
+                mMatched = b == mDelimiter[0] ? 1 : 0;
+                pend(mDelimiter, matched, mMatched == 0 ? b : -1);
+            }
+        }
+
+        @Override
+        public synchronized int read(@NonNull byte[] bytes, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            int b = read();
+            if (b == -1) return -1;
+            bytes[off] = (byte) b;
+            int count = 1;
+            while (count < len && (mPendingPos < mPendingLen || (!mEnded && mIn.available() > 0))) {
+                b = read();
+                if (b == -1) break;
+                bytes[off + count++] = (byte) b;
+            }
+            return count;
+        }
+
+        @Override
+        public synchronized int available() throws IOException {
+            return (mPendingLen - mPendingPos) + (mEnded ? 0 : Math.min(mIn.available(), 1));
+        }
+
+        /*
+         * 将本帧剩余的内容读入缓冲区，使终端可以继续执行后续命令
+         * */
+        synchronized void drain() {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try {
+                int b;
+                while ((b = read()) != -1) buffer.write(b);
+            } catch (IOException ignored) {
+                mBroken = true;
+                finish(-1);
+            }
+            mPending = buffer.toByteArray();
+            mPendingPos = 0;
+            mPendingLen = mPending.length;
+        }
+
+        private void pend(@Nullable byte[] bytes, int len, int extra) {
+            int size = (mPendingLen - mPendingPos) + len + 1;
+            if (mPendingPos > 0 || size > mPending.length) {
+                byte[] pending = size > mPending.length ? new byte[Math.max(size, mPending.length * 2)] : mPending;
+                System.arraycopy(mPending, mPendingPos, pending, 0, mPendingLen - mPendingPos);
+                mPendingLen -= mPendingPos;
+                mPendingPos = 0;
+                mPending = pending;
+            }
+            if (bytes != null) {
+                System.arraycopy(bytes, 0, mPending, mPendingLen, len);
+                mPendingLen += len;
+            }
+            if (extra != -1) mPending[mPendingLen++] = (byte) extra;
+        }
+
+        private int readTrailer() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = mIn.read()) != -1 && b != '\n') line.append((char) b);
+            if (b == -1) mBroken = true;
+            if (!mIsOutput) return -1;
+            try {
+                return Integer.parseInt(line.toString().trim());
+            } catch (NumberFormatException e) {
+                mBroken = true;
+                return -1;
+            }
+        }
+
+        private void finish(int exitValue) {
+            if (mEnded) return;
+            mEnded = true;
+            mOwner.onFrameEnd(mIsOutput, exitValue);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.rosan.app_process;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class TerminalSessionPool {
+    /*
+     * 空闲超过该时间的终端不再复用，直接关闭
+     * */
+    private static final long IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    private static final int MAX_IDLE_SESSIONS = 2;
+
+    /*
+     * 复用前终端需要在该时间内回显ping，否则视为已卡死并替换
+     * */
+    private static final long PING_TIMEOUT_MILLIS = 1000;
+
+    private static final Map<List<String>, TerminalSessionPool> sPools = new HashMap<>();
+
+    private final @NonNull List<String> mTerminal;
+
+    private final Deque<TerminalSession> mIdleSessions = new ArrayDeque<>();
+
+    private TerminalSessionPool(@NonNull List<String> terminal) {
+        mTerminal = terminal;
+    }
+
+    static @NonNull TerminalSessionPool get(@NonNull List<String> terminal) {
+        synchronized (sPools) {
+            TerminalSessionPool pool = sPools.get(terminal);
+            if (pool == null) {
+                pool = new TerminalSessionPool(new ArrayList<>(terminal));
+                sPools.put(pool.mTerminal, pool);
+            }
+            return pool;
+        }
+    }
+
+    static void closeAll() {
+        List<TerminalSessionPool> pools;
+        synchronized (sPools) {
+            pools = new ArrayList<>(sPools.values());
+        }
+        for (TerminalSessionPool pool : pools) {
+            pool.close();
+        }
+    }
+
+    @NonNull
+    Process exec(@NonNull AppProcess.ProcessParams params) throws IOException {
+        TerminalSession session = acquire();
+        try {
+            return session.exec(params, () -> release(session));
+        } catch (IOException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    void close() {
+        synchronized (mIdleSessions) {
+            for (TerminalSession session : mIdleSessions) {
+                session.close();
+            }
+            mIdleSessions.clear();
+        }
+    }
+
+    private @NonNull TerminalSession acquire() throws IOException {
+        long now = SystemClock.elapsedRealtime();
+        while (true) {
+            TerminalSession session;
+            synchronized (mIdleSessions) {
+                session = mIdleSessions.pollFirst();
+            }
+            if (session == null) break;
+            /*
+             * 在锁外ping，卡死的终端最多需要等待PING_TIMEOUT_MILLIS
+             * */
+            if (session.isHealthy() && now - session.getLastUsed() < IDLE_TIMEOUT_MILLIS
+                    && session.ping(PING_TIMEOUT_MILLIS))
+                return session;
+            session.close();
+        }
+        return TerminalSession.open(mTerminal);
+    }
+
+    private void release(@NonNull TerminalSession session) {
+        synchronized (mIdleSessions) {
+            if (session.isHealthy() && mIdleSessions.size() < MAX_IDLE_SESSIONS) {
+                mIdleSessions.addFirst(session);
+                return;
+            }
+        }
+        session.close();
+    }
+}
@@ -0,0 +1,122 @@
+package com.rosan.app_process;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * ProcessManager所在进程的Binder线程池状态，用于判断线程池是否饱和以及锁竞争情况
+ * */
+public class ThreadPoolStats implements Parcelable {
+    public static final Creator<ThreadPoolStats> CREATOR = new Creator<ThreadPoolStats>() {
+        @Override
+        public ThreadPoolStats createFromParcel(Parcel in) {
+            return new ThreadPoolStats(in);
+        }
+
+        @Override
+        public ThreadPoolStats[] newArray(int size) {
+            return new ThreadPoolStats[size];
+        }
+    };
+
+    private final int maxThreads;
+
+    private final int activeTransactions;
+
+    private final int peakTransactions;
+
+    private final long totalTransactions;
+
+    private final long saturatedTransactions;
+
+    private final long lockAcquisitions;
+
+    private final long lockWaitNanos;
+
+    public ThreadPoolStats(int maxThreads, int activeTransactions, int peakTransactions, long totalTransactions, long saturatedTransactions, long lockAcquisitions, long lockWaitNanos) {
+        this.maxThreads = maxThreads;
+        this.activeTransactions = activeTransactions;
+        this.peakTransactions = peakTransactions;
+        this.totalTransactions = totalTransactions;
+        this.saturatedTransactions = saturatedTransactions;
+        this.lockAcquisitions = lockAcquisitions;
+        this.lockWaitNanos = lockWaitNanos;
+    }
+
+    public ThreadPoolStats(Parcel parcel) {
+        this.maxThreads = parcel.readInt();
+        this.activeTransactions = parcel.readInt();
+        this.peakTransactions = parcel.readInt();
+        this.totalTransactions = parcel.readLong();
+        this.saturatedTransactions = parcel.readLong();
+        this.lockAcquisitions = parcel.readLong();
+        this.lockWaitNanos = parcel.readLong();
+    }
+
+    // Binder线程数上限（不含主线程）
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    // 当前正在执行的transact数量
+    public int getActiveTransactions() {
+        return activeTransactions;
+    }
+
+    public int getPeakTransactions() {
+        return peakTransactions;
+    }
+
+    public long getTotalTransactions() {
+        return totalTransactions;
+    }
+
+    /*
+     * 开始执行后正在执行的transact数达到getMaxThreads()的次数，即线程池被完全占用，
+     * 此时之后到达的调用需要排队等待空闲的Binder线程
+     * */
+    public long getSaturatedTransactions() {
+        return saturatedTransactions;
+    }
+
+    public long getLockAcquisitions() {
+        return lockAcquisitions;
+    }
+
+    // 在ProcessManager内部锁上等待的总时间
+    public long getLockWaitNanos() {
+        return lockWaitNanos;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(@NonNull Parcel dest, int flags) {
+        dest.writeInt(maxThreads);
+        dest.writeInt(activeTransactions);
+        dest.writeInt(peakTransactions);
+        dest.writeLong(totalTransactions);
+        dest.writeLong(saturatedTransactions);
+        dest.writeLong(lockAcquisitions);
+        dest.writeLong(lockWaitNanos);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ThreadPoolStats{maxThreads=" + maxThreads
+                + ", active=" + activeTransactions
+                + ", peak=" + peakTransactions
+                + ", total=" + totalTransactions
+                + ", saturated=" + saturatedTransactions
+                + ", lockAcquisitions=" + lockAcquisitions
+                + ", lockWait=" + TimeUnit.NANOSECONDS.toMicros(lockWaitNanos) + "us}";
+    }
+}
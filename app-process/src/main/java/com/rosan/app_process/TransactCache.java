@@ -0,0 +1,178 @@
+package com.rosan.app_process;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * BinderWrapper的返回数据缓存，只缓存通过cache()登记的(接口描述符, code)，以请求数据的字节内容为键；
+ * 含有Binder或fd的请求与返回数据、以及带有异常的返回数据不会被缓存，目标Binder死亡时其缓存全部失效
+ * */
+public class TransactCache {
+    private final TransactRules<Long> mRules = new TransactRules<>();
+
+    private final LruCache<TransactKey, Entry> mEntries;
+
+    private final Map<IBinder, IBinder.DeathRecipient> mLinked = new WeakHashMap<>();
+
+    private final AtomicLong mHitCount = new AtomicLong();
+
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    public TransactCache(int maxEntries) {
+        mEntries = new LruCache<>(maxEntries);
+    }
+
+    /*
+     * 缓存该接口的该调用，结果在ttl后过期
+     * */
+    public TransactCache cache(@NonNull String descriptor, int code, long ttl, @NonNull TimeUnit unit) {
+        mRules.put(descriptor, code, unit.toMillis(ttl));
+        return this;
+    }
+
+    public void invalidate() {
+        mEntries.evictAll();
+    }
+
+    public void invalidate(@NonNull IBinder target) {
+        target = BinderRegistry.unwrap(target);
+        for (TransactKey key : mEntries.snapshot().keySet()) {
+            if (key.mTarget == target) mEntries.remove(key);
+        }
+    }
+
+    /*
+     * 收到符合filter的广播时使全部缓存失效，例如包变化的广播；返回的receiver用于取消注册
+     * */
+    public @NonNull BroadcastReceiver invalidateOn(@NonNull Context context, @NonNull IntentFilter filter) {
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        };
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            context.registerReceiver(receiver, filter, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            context.registerReceiver(receiver, filter);
+        }
+        return receiver;
+    }
+
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    /*
+     * 该调用未登记或请求数据无法序列化时返回null
+     * */
+    @Nullable
+    TransactKey key(@NonNull BinderWrapper wrapper, int code, @NonNull Parcel data) throws RemoteException {
+        if (mRules.isEmpty() || mRules.get(wrapper.getCachedDescriptor(), code) == null) return null;
+        return TransactKey.of(wrapper, code, data);
+    }
+
+    boolean get(@NonNull TransactKey key, @NonNull Parcel reply) {
+        Entry entry = mEntries.get(key);
+        if (entry != null && entry.mExpiresAt <= SystemClock.elapsedRealtime()) {
+            mEntries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            mMissCount.incrementAndGet();
+            return false;
+        }
+        mHitCount.incrementAndGet();
+        reply.setDataSize(0);
+        reply.unmarshall(entry.mReply, 0, entry.mReply.length);
+        reply.setDataPosition(0);
+        return true;
+    }
+
+    void put(@NonNull BinderWrapper wrapper, @NonNull TransactKey key, @NonNull Parcel reply) throws RemoteException {
+        Long ttl = mRules.get(wrapper.getCachedDescriptor(), key.mCode);
+        if (ttl == null) return;
+        int position = reply.dataPosition();
+        reply.setDataPosition(0);
+        // 只缓存没有异常的返回数据
+        boolean success = reply.dataSize() >= 4 && reply.readInt() == 0;
+        reply.setDataPosition(position);
+        if (!success) return;
+        byte[] bytes = ParcelSpill.marshall(reply);
+        if (bytes == null) return;
+        if (!linkDeath(key.mTarget)) return;
+        mEntries.put(key, new Entry(bytes, SystemClock.elapsedRealtime() + ttl));
+    }
+
+    private boolean linkDeath(@NonNull IBinder target) {
+        synchronized (mLinked) {
+            if (mLinked.containsKey(target)) return true;
+            IBinder.DeathRecipient recipient = new TargetDeathRecipient(this, target);
+            try {
+                target.linkToDeath(recipient, 0);
+            } catch (RemoteException e) {
+                return false;
+            }
+            mLinked.put(target, recipient);
+            return true;
+        }
+    }
+
+    // 只弱引用目标Binder，避免mLinked的值引用其键而无法回收
+    private static class TargetDeathRecipient implements IBinder.DeathRecipient {
+        private final @NonNull TransactCache mCache;
+
+        private final @NonNull WeakReference<IBinder> mTarget;
+
+        TargetDeathRecipient(@NonNull TransactCache cache, @NonNull IBinder target) {
+            mCache = cache;
+            mTarget = new WeakReference<>(target);
+        }
+
+        @Override
+        public void binderDied() {
+            IBinder target = mTarget.get();
+            if (target == null) return;
+            synchronized (mCache.mLinked) {
+                mCache.mLinked.remove(target);
+            }
+            mCache.invalidate(target);
+        }
+    }
+
+    private static class Entry {
+        private final @NonNull byte[] mReply;
+
+        private final long mExpiresAt;
+
+        Entry(@NonNull byte[] reply, long expiresAt) {
+            mReply = reply;
+            mExpiresAt = expiresAt;
+        }
+    }
+}
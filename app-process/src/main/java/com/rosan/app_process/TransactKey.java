@@ -0,0 +1,51 @@
+package com.rosan.app_process;
+
+import android.os.IBinder;
+import android.os.Parcel;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/*
+ * 以目标Binder、transact code与请求数据的字节内容标识一次调用
+ * */
+class TransactKey {
+    final @NonNull IBinder mTarget;
+
+    final int mCode;
+
+    final @NonNull byte[] mData;
+
+    private final int mHash;
+
+    TransactKey(@NonNull IBinder target, int code, @NonNull byte[] data) {
+        mTarget = target;
+        mCode = code;
+        mData = data;
+        mHash = (System.identityHashCode(target) * 31 + code) * 31 + Arrays.hashCode(data);
+    }
+
+    /*
+     * 请求数据含有Binder或fd而无法序列化时返回null
+     * */
+    static @Nullable TransactKey of(@NonNull BinderWrapper wrapper, int code, @NonNull Parcel data) {
+        byte[] bytes = ParcelSpill.marshall(data);
+        if (bytes == null) return null;
+        return new TransactKey(wrapper.getTarget(), code, bytes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TransactKey)) return false;
+        TransactKey key = (TransactKey) o;
+        return mHash == key.mHash && mTarget == key.mTarget && mCode == key.mCode && Arrays.equals(mData, key.mData);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHash;
+    }
+}
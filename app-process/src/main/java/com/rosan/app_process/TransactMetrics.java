@@ -0,0 +1,209 @@
+package com.rosan.app_process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * 按(接口描述符, code)统计调用次数、错误次数、数据大小与耗时分布；
+ * 每个(接口描述符, code)只在首次出现时分配一次，之后的记录不分配对象，
+ * 计数按线程分散到多个条带中以减少竞争，读取时再合并
+ * */
+public class TransactMetrics {
+    // 耗时分布的桶数，第i个桶为[2^(i-1), 2^i)微秒，最后一个桶包含更长的耗时
+    public static final int BUCKETS = 24;
+
+    private static final int CAPACITY = 256;
+
+    private static final int STRIPES = 4;
+
+    private static final int COUNT = 0;
+
+    private static final int ERRORS = 1;
+
+    private static final int BYTES_IN = 2;
+
+    private static final int BYTES_OUT = 3;
+
+    private static final int TOTAL_NANOS = 4;
+
+    private static final int HISTOGRAM = 5;
+
+    private static final int FIELDS = HISTOGRAM + BUCKETS;
+
+    // 表已满时的记录位置
+    private static final String OVERFLOW = "<overflow>";
+
+    private final AtomicReferenceArray<Slot> mSlots = new AtomicReferenceArray<>(CAPACITY);
+
+    private final Slot mOverflow = new Slot(OVERFLOW, 0);
+
+    public void record(@Nullable String descriptor, int code, int bytesIn, int bytesOut, long nanos, boolean error) {
+        AtomicLongArray values = slot(descriptor != null ? descriptor : "", code).mValues;
+        int base = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * FIELDS;
+        values.incrementAndGet(base + COUNT);
+        if (error) values.incrementAndGet(base + ERRORS);
+        values.addAndGet(base + BYTES_IN, bytesIn);
+        values.addAndGet(base + BYTES_OUT, bytesOut);
+        values.addAndGet(base + TOTAL_NANOS, nanos);
+        values.incrementAndGet(base + HISTOGRAM + bucket(nanos));
+    }
+
+    private static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    @NonNull
+    private Slot slot(@NonNull String descriptor, int code) {
+        int index = (descriptor.hashCode() * 31 + code) & (CAPACITY - 1);
+        for (int i = 0; i < CAPACITY; i++) {
+            int probe = (index + i) & (CAPACITY - 1);
+            Slot slot = mSlots.get(probe);
+            if (slot == null) {
+                Slot created = new Slot(descriptor, code);
+                if (mSlots.compareAndSet(probe, null, created)) return created;
+                slot = mSlots.get(probe);
+            }
+            if (slot.mCode == code && slot.mDescriptor.equals(descriptor)) return slot;
+        }
+        return mOverflow;
+    }
+
+    public void reset() {
+        for (int i = 0; i < CAPACITY; i++) {
+            mSlots.set(i, null);
+        }
+        mOverflow.reset();
+    }
+
+    @NonNull
+    public List<Entry> snapshot() {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < CAPACITY; i++) {
+            Slot slot = mSlots.get(i);
+            if (slot != null) entries.add(slot.snapshot());
+        }
+        Entry overflow = mOverflow.snapshot();
+        if (overflow.getCount() > 0) entries.add(overflow);
+        return entries;
+    }
+
+    public void dump(@NonNull PrintWriter writer) {
+        for (Entry entry : snapshot()) {
+            writer.println(entry);
+        }
+    }
+
+    private static class Slot {
+        private final @NonNull String mDescriptor;
+
+        private final int mCode;
+
+        private final AtomicLongArray mValues = new AtomicLongArray(STRIPES * FIELDS);
+
+        Slot(@NonNull String descriptor, int code) {
+            mDescriptor = descriptor;
+            mCode = code;
+        }
+
+        void reset() {
+            for (int i = 0; i < mValues.length(); i++) {
+                mValues.set(i, 0);
+            }
+        }
+
+        @NonNull
+        Entry snapshot() {
+            long[] values = new long[FIELDS];
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                for (int field = 0; field < FIELDS; field++) {
+                    values[field] += mValues.get(stripe * FIELDS + field);
+                }
+            }
+            return new Entry(mDescriptor, mCode, values);
+        }
+    }
+
+    public static class Entry {
+        private final @NonNull String mDescriptor;
+
+        private final int mCode;
+
+        private final @NonNull long[] mValues;
+
+        Entry(@NonNull String descriptor, int code, @NonNull long[] values) {
+            mDescriptor = descriptor;
+            mCode = code;
+            mValues = values;
+        }
+
+        @NonNull
+        public String getDescriptor() {
+            return mDescriptor;
+        }
+
+        public int getCode() {
+            return mCode;
+        }
+
+        public long getCount() {
+            return mValues[COUNT];
+        }
+
+        public long getErrors() {
+            return mValues[ERRORS];
+        }
+
+        public long getBytesIn() {
+            return mValues[BYTES_IN];
+        }
+
+        public long getBytesOut() {
+            return mValues[BYTES_OUT];
+        }
+
+        public long getTotalNanos() {
+            return mValues[TOTAL_NANOS];
+        }
+
+        // 耗时落在第bucket个桶中的次数
+        public long getHistogram(int bucket) {
+            return mValues[HISTOGRAM + bucket];
+        }
+
+        /*
+         * 按耗时分布估算的分位数（取所在桶的上界），单位为微秒
+         * */
+        public long getPercentileMicros(double percentile) {
+            long target = (long) Math.ceil(getCount() * percentile);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += getHistogram(bucket);
+                if (seen >= target && seen > 0) return 1L << bucket;
+            }
+            return 1L << (BUCKETS - 1);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            long count = getCount();
+            return mDescriptor + "#" + mCode
+                    + " count=" + count
+                    + " errors=" + getErrors()
+                    + " in=" + getBytesIn() + "B"
+                    + " out=" + getBytesOut() + "B"
+                    + " avg=" + (count > 0 ? TimeUnit.NANOSECONDS.toMicros(getTotalNanos() / count) : 0) + "us"
+                    + " p50<=" + getPercentileMicros(0.5) + "us"
+                    + " p99<=" + getPercentileMicros(0.99) + "us";
+        }
+    }
+}
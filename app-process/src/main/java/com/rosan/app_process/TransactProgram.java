@@ -0,0 +1,502 @@
+package com.rosan.app_process;
+
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/*
+ * 一段在ProcessManager中执行的transact序列：后续调用可以引用之前调用返回的Binder或数值，
+ * 支持遍历返回的列表以及在出错时提前结束，整段程序只需一次客户端到ProcessManager的通信。
+ * 数据保存在编号的槽位中，初始值可以通过Builder::binder/value设置，执行结束后所有槽位会被返回
+ * */
+public class TransactProgram {
+    static final int OP_BEGIN = 1;
+
+    static final int OP_WRITE_TOKEN = 2;
+
+    static final int OP_WRITE_INT = 3;
+
+    static final int OP_WRITE_LONG = 4;
+
+    static final int OP_WRITE_STRING = 5;
+
+    static final int OP_WRITE_SLOT = 6;
+
+    static final int OP_CALL = 7;
+
+    static final int OP_READ_EXCEPTION = 8;
+
+    static final int OP_READ_INT = 9;
+
+    static final int OP_READ_LONG = 10;
+
+    static final int OP_READ_STRING = 11;
+
+    static final int OP_READ_BINDER = 12;
+
+    static final int OP_READ_STRING_LIST = 13;
+
+    static final int OP_READ_INT_ARRAY = 14;
+
+    static final int OP_READ_BINDER_LIST = 15;
+
+    static final int OP_FOR_EACH = 16;
+
+    static final int OP_APPEND = 17;
+
+    static final int OP_EXIT_IF_FALSE = 18;
+
+    public static int STATUS_COMPLETED = 0;
+
+    // 因exitIfFalse提前结束
+    public static int STATUS_EXITED = 1;
+
+    // 因transact失败或返回了异常而结束
+    public static int STATUS_ERROR = 2;
+
+    private final @NonNull List<Object> mSlots;
+
+    private final @NonNull List<Instruction> mInstructions;
+
+    private TransactProgram(@NonNull List<Object> slots, @NonNull List<Instruction> instructions) {
+        mSlots = slots;
+        mInstructions = instructions;
+    }
+
+    void writeToParcel(@NonNull Parcel dest) {
+        dest.writeInt(mSlots.size());
+        for (Object slot : mSlots) {
+            dest.writeValue(slot);
+        }
+        dest.writeInt(mInstructions.size());
+        for (Instruction instruction : mInstructions) {
+            dest.writeInt(instruction.mOp);
+            dest.writeInt(instruction.mA);
+            dest.writeInt(instruction.mB);
+            dest.writeLong(instruction.mLong);
+            dest.writeString(instruction.mString);
+        }
+    }
+
+    /*
+     * 在ProcessManager中读取并执行程序，执行结果写入reply
+     * */
+    static void execute(@NonNull Parcel data, @NonNull Parcel reply, @NonNull Transactor transactor) {
+        Object[] slots = new Object[data.readInt()];
+        ClassLoader classLoader = TransactProgram.class.getClassLoader();
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = data.readValue(classLoader);
+        }
+        Instruction[] instructions = new Instruction[data.readInt()];
+        for (int i = 0; i < instructions.length; i++) {
+            instructions[i] = new Instruction(data.readInt(), data.readInt(), data.readInt(), data.readLong(), data.readString());
+        }
+        Interpreter interpreter = new Interpreter(slots, instructions, transactor);
+        int status = STATUS_COMPLETED;
+        String error = null;
+        try {
+            interpreter.run(0, instructions.length);
+        } catch (ExitException e) {
+            status = STATUS_EXITED;
+        } catch (RemoteException | RuntimeException e) {
+            status = STATUS_ERROR;
+            error = e.toString();
+        } finally {
+            interpreter.recycle();
+        }
+        reply.writeInt(status);
+        reply.writeInt(interpreter.mPc);
+        reply.writeString(error);
+        reply.writeInt(slots.length);
+        for (Object slot : slots) {
+            reply.writeValue(slot);
+        }
+    }
+
+    static @NonNull Result readResult(@NonNull Parcel reply) {
+        int status = reply.readInt();
+        int pc = reply.readInt();
+        String error = reply.readString();
+        Object[] slots = new Object[reply.readInt()];
+        ClassLoader classLoader = TransactProgram.class.getClassLoader();
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = reply.readValue(classLoader);
+        }
+        return new Result(status, pc, error, slots);
+    }
+
+    interface Transactor {
+        boolean transact(IBinder binder, int code, Parcel data, Parcel reply, int flags) throws RemoteException;
+    }
+
+    private static class ExitException extends Exception {
+    }
+
+    private static class Interpreter {
+        private final Object[] mSlots;
+
+        private final Instruction[] mInstructions;
+
+        private final Transactor mTransactor;
+
+        private IBinder mTarget = null;
+
+        private Parcel mData = null;
+
+        private Parcel mReply = null;
+
+        private int mPc = 0;
+
+        Interpreter(Object[] slots, Instruction[] instructions, Transactor transactor) {
+            mSlots = slots;
+            mInstructions = instructions;
+            mTransactor = transactor;
+        }
+
+        void run(int from, int to) throws RemoteException, ExitException {
+            int pc = from;
+            while (pc < to) {
+                mPc = pc;
+                Instruction instruction = mInstructions[pc];
+                if (instruction.mOp == OP_FOR_EACH) {
+                    // mB为循环体的指令数量
+                    int bodyEnd = pc + 1 + instruction.mB;
+                    for (Object element : asList(mSlots[instruction.mA])) {
+                        mSlots[(int) instruction.mLong] = element;
+                        run(pc + 1, bodyEnd);
+                    }
+                    pc = bodyEnd;
+                    continue;
+                }
+                step(instruction);
+                pc++;
+            }
+        }
+
+        private void step(Instruction instruction) throws RemoteException, ExitException {
+            switch (instruction.mOp) {
+                case OP_BEGIN:
+                    recycle();
+                    mTarget = (IBinder) mSlots[instruction.mA];
+                    if (mTarget == null) throw new IllegalStateException("slot " + instruction.mA + " is not a binder");
+                    mData = Parcel.obtain();
+                    mReply = Parcel.obtain();
+                    break;
+                case OP_WRITE_TOKEN:
+                    mData.writeInterfaceToken(instruction.mString);
+                    break;
+                case OP_WRITE_INT:
+                    mData.writeInt(instruction.mA);
+                    break;
+                case OP_WRITE_LONG:
+                    mData.writeLong(instruction.mLong);
+                    break;
+                case OP_WRITE_STRING:
+                    mData.writeString(instruction.mString);
+                    break;
+                case OP_WRITE_SLOT:
+                    writeSlot(mData, mSlots[instruction.mA]);
+                    break;
+                case OP_CALL:
+                    if (!mTransactor.transact(mTarget, instruction.mA, mData, mReply, instruction.mB))
+                        throw new IllegalStateException("transact " + instruction.mA + " returned false");
+                    mReply.setDataPosition(0);
+                    break;
+                case OP_READ_EXCEPTION:
+                    mReply.readException();
+                    break;
+                case OP_READ_INT:
+                    mSlots[instruction.mA] = mReply.readInt();
+                    break;
+                case OP_READ_LONG:
+                    mSlots[instruction.mA] = mReply.readLong();
+                    break;
+                case OP_READ_STRING:
+                    mSlots[instruction.mA] = mReply.readString();
+                    break;
+                case OP_READ_BINDER:
+                    mSlots[instruction.mA] = mReply.readStrongBinder();
+                    break;
+                case OP_READ_STRING_LIST:
+                    mSlots[instruction.mA] = mReply.createStringArrayList();
+                    break;
+                case OP_READ_INT_ARRAY: {
+                    int[] array = mReply.createIntArray();
+                    List<Integer> list = null;
+                    if (array != null) {
+                        list = new ArrayList<>(array.length);
+                        for (int value : array) list.add(value);
+                    }
+                    mSlots[instruction.mA] = list;
+                    break;
+                }
+                case OP_READ_BINDER_LIST:
+                    mSlots[instruction.mA] = mReply.createBinderArrayList();
+                    break;
+                case OP_APPEND: {
+                    @SuppressWarnings("unchecked")
+                    List<Object> list = (List<Object>) mSlots[instruction.mA];
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        mSlots[instruction.mA] = list;
+                    }
+                    list.add(mSlots[instruction.mB]);
+                    break;
+                }
+                case OP_EXIT_IF_FALSE:
+                    if (isFalse(mSlots[instruction.mA])) throw new ExitException();
+                    break;
+                default:
+                    throw new IllegalStateException("unknown op " + instruction.mOp);
+            }
+        }
+
+        void recycle() {
+            if (mData != null) mData.recycle();
+            if (mReply != null) mReply.recycle();
+            mData = null;
+            mReply = null;
+        }
+
+        private static void writeSlot(Parcel data, Object value) {
+            if (value instanceof Integer) data.writeInt((Integer) value);
+            else if (value instanceof Long) data.writeLong((Long) value);
+            else if (value instanceof Boolean) data.writeInt((Boolean) value ? 1 : 0);
+            else if (value instanceof String) data.writeString((String) value);
+            else if (value instanceof IBinder) data.writeStrongBinder((IBinder) value);
+            else throw new IllegalStateException("can't write slot value " + value);
+        }
+
+        private static List<?> asList(Object value) {
+            if (value == null) return new ArrayList<>();
+            if (value instanceof List) return (List<?>) value;
+            if (value instanceof Object[]) return Arrays.asList((Object[]) value);
+            throw new IllegalStateException("slot value " + value + " is not a list");
+        }
+
+        private static boolean isFalse(Object value) {
+            if (value == null) return true;
+            if (value instanceof Boolean) return !(Boolean) value;
+            if (value instanceof Integer) return (Integer) value == 0;
+            if (value instanceof Long) return (Long) value == 0;
+            if (value instanceof List) return ((List<?>) value).isEmpty();
+            return false;
+        }
+    }
+
+    private static class Instruction {
+        private final int mOp;
+
+        private final int mA;
+
+        private final int mB;
+
+        private final long mLong;
+
+        private final @Nullable String mString;
+
+        Instruction(int op, int a, int b, long l, @Nullable String string) {
+            mOp = op;
+            mA = a;
+            mB = b;
+            mLong = l;
+            mString = string;
+        }
+    }
+
+    public static class Result {
+        private final int mStatus;
+
+        private final int mPc;
+
+        private final @Nullable String mError;
+
+        private final @NonNull Object[] mSlots;
+
+        Result(int status, int pc, @Nullable String error, @NonNull Object[] slots) {
+            mStatus = status;
+            mPc = pc;
+            mError = error;
+            mSlots = slots;
+        }
+
+        public int getStatus() {
+            return mStatus;
+        }
+
+        // 最后执行的指令的位置，出错或提前结束时可用于定位
+        public int getPc() {
+            return mPc;
+        }
+
+        @Nullable
+        public String getError() {
+            return mError;
+        }
+
+        @Nullable
+        public Object get(int slot) {
+            return mSlots[slot];
+        }
+
+        public int getInt(int slot) {
+            Object value = mSlots[slot];
+            return value instanceof Integer ? (Integer) value : 0;
+        }
+
+        public long getLong(int slot) {
+            Object value = mSlots[slot];
+            return value instanceof Long ? (Long) value : 0;
+        }
+
+        @Nullable
+        public String getString(int slot) {
+            Object value = mSlots[slot];
+            return value instanceof String ? (String) value : null;
+        }
+
+        @Nullable
+        public IBinder getBinder(int slot) {
+            Object value = mSlots[slot];
+            return value instanceof IBinder ? (IBinder) value : null;
+        }
+
+        @Nullable
+        public List<?> getList(int slot) {
+            Object value = mSlots[slot];
+            return value instanceof List ? (List<?>) value : null;
+        }
+    }
+
+    public static class Builder {
+        private final List<Object> mSlots = new ArrayList<>();
+
+        private final List<Instruction> mInstructions = new ArrayList<>();
+
+        private final Deque<Integer> mLoops = new ArrayDeque<>();
+
+        // 新建一个空槽位，返回其编号
+        public int slot() {
+            mSlots.add(null);
+            return mSlots.size() - 1;
+        }
+
+        // 新建一个以Binder为初始值的槽位
+        public int binder(@NonNull IBinder binder) {
+            mSlots.add(binder);
+            return mSlots.size() - 1;
+        }
+
+        // 新建一个以Integer、Long、String、Boolean或List为初始值的槽位
+        public int value(@Nullable Object value) {
+            mSlots.add(value);
+            return mSlots.size() - 1;
+        }
+
+        private Builder add(int op, int a, int b, long l, @Nullable String string) {
+            mInstructions.add(new Instruction(op, a, b, l, string));
+            return this;
+        }
+
+        // 开始一次新的调用，目标为binderSlot中的Binder
+        public Builder begin(int binderSlot) {
+            return add(OP_BEGIN, binderSlot, 0, 0, null);
+        }
+
+        public Builder writeInterfaceToken(@NonNull String descriptor) {
+            return add(OP_WRITE_TOKEN, 0, 0, 0, descriptor);
+        }
+
+        public Builder writeInt(int value) {
+            return add(OP_WRITE_INT, value, 0, 0, null);
+        }
+
+        public Builder writeLong(long value) {
+            return add(OP_WRITE_LONG, 0, 0, value, null);
+        }
+
+        public Builder writeString(@Nullable String value) {
+            return add(OP_WRITE_STRING, 0, 0, 0, value);
+        }
+
+        // 将槽位中的值写入当前调用的数据
+        public Builder writeSlot(int slot) {
+            return add(OP_WRITE_SLOT, slot, 0, 0, null);
+        }
+
+        public Builder call(int code, int flags) {
+            return add(OP_CALL, code, flags, 0, null);
+        }
+
+        // 返回数据中含有异常时结束程序，状态为STATUS_ERROR
+        public Builder readException() {
+            return add(OP_READ_EXCEPTION, 0, 0, 0, null);
+        }
+
+        public Builder readInt(int slot) {
+            return add(OP_READ_INT, slot, 0, 0, null);
+        }
+
+        public Builder readLong(int slot) {
+            return add(OP_READ_LONG, slot, 0, 0, null);
+        }
+
+        public Builder readString(int slot) {
+            return add(OP_READ_STRING, slot, 0, 0, null);
+        }
+
+        public Builder readBinder(int slot) {
+            return add(OP_READ_BINDER, slot, 0, 0, null);
+        }
+
+        public Builder readStringList(int slot) {
+            return add(OP_READ_STRING_LIST, slot, 0, 0, null);
+        }
+
+        public Builder readIntArray(int slot) {
+            return add(OP_READ_INT_ARRAY, slot, 0, 0, null);
+        }
+
+        public Builder readBinderList(int slot) {
+            return add(OP_READ_BINDER_LIST, slot, 0, 0, null);
+        }
+
+        // 将valueSlot的值追加到listSlot的列表中，常用于在循环中收集结果
+        public Builder append(int listSlot, int valueSlot) {
+            return add(OP_APPEND, listSlot, valueSlot, 0, null);
+        }
+
+        // 槽位的值为null、false、0或空列表时结束程序，状态为STATUS_EXITED
+        public Builder exitIfFalse(int slot) {
+            return add(OP_EXIT_IF_FALSE, slot, 0, 0, null);
+        }
+
+        // 遍历listSlot中的列表，每次将元素放入elementSlot并执行至对应的endForEach
+        public Builder beginForEach(int listSlot, int elementSlot) {
+            mLoops.push(mInstructions.size());
+            return add(OP_FOR_EACH, listSlot, 0, elementSlot, null);
+        }
+
+        public Builder endForEach() {
+            if (mLoops.isEmpty()) throw new IllegalStateException("endForEach without beginForEach");
+            int index = mLoops.pop();
+            Instruction loop = mInstructions.get(index);
+            mInstructions.set(index, new Instruction(OP_FOR_EACH, loop.mA, mInstructions.size() - index - 1, loop.mLong, null));
+            return this;
+        }
+
+        public @NonNull TransactProgram build() {
+            if (!mLoops.isEmpty()) throw new IllegalStateException("beginForEach without endForEach");
+            return new TransactProgram(new ArrayList<>(mSlots), new ArrayList<>(mInstructions));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.rosan.app_process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * 按(接口描述符, code)登记的配置
+ * */
+class TransactRules<V> {
+    private final Map<String, Map<Integer, V>> mRules = new ConcurrentHashMap<>();
+
+    void put(@NonNull String descriptor, int code, @NonNull V value) {
+        Map<Integer, V> codes = mRules.get(descriptor);
+        if (codes == null) {
+            synchronized (mRules) {
+                codes = mRules.get(descriptor);
+                if (codes == null) {
+                    codes = new ConcurrentHashMap<>();
+                    mRules.put(descriptor, codes);
+                }
+            }
+        }
+        codes.put(code, value);
+    }
+
+    @Nullable
+    V get(@Nullable String descriptor, int code) {
+        if (descriptor == null) return null;
+        Map<Integer, V> codes = mRules.get(descriptor);
+        return codes != null ? codes.get(code) : null;
+    }
+
+    boolean isEmpty() {
+        return mRules.isEmpty();
+    }
+}
@@ -0,0 +1,107 @@
+package com.rosan.app_process;
+
+import android.os.Parcel;
+import android.os.RemoteException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * 合并同时发出的相同调用：目标、code与请求数据都相同的调用共用一次transact，返回数据复制给每个等待者；
+ * 只对通过share()登记的(接口描述符, code)生效，应只登记只读的调用
+ * */
+public class TransactSingleFlight {
+    private final TransactRules<Boolean> mRules = new TransactRules<>();
+
+    private final Map<TransactKey, Flight> mFlights = new ConcurrentHashMap<>();
+
+    private final AtomicLong mCallCount = new AtomicLong();
+
+    private final AtomicLong mSharedCount = new AtomicLong();
+
+    public TransactSingleFlight share(@NonNull String descriptor, int code) {
+        mRules.put(descriptor, code, true);
+        return this;
+    }
+
+    // 实际发出的transact次数
+    public long getCallCount() {
+        return mCallCount.get();
+    }
+
+    // 通过等待他人的transact而得到结果的次数
+    public long getSharedCount() {
+        return mSharedCount.get();
+    }
+
+    @Nullable
+    TransactKey key(@NonNull BinderWrapper wrapper, int code, @NonNull Parcel data) throws RemoteException {
+        if (mRules.isEmpty() || mRules.get(wrapper.getCachedDescriptor(), code) == null) return null;
+        return TransactKey.of(wrapper, code, data);
+    }
+
+    boolean transact(@NonNull TransactKey key, @NonNull Parcel reply, @NonNull Call call) throws RemoteException {
+        Flight flight = new Flight();
+        Flight existing = mFlights.putIfAbsent(key, flight);
+        if (existing != null && existing.await()) {
+            if (existing.mError instanceof RemoteException) throw (RemoteException) existing.mError;
+            if (existing.mError instanceof RuntimeException) throw (RuntimeException) existing.mError;
+            if (existing.mReply != null) {
+                mSharedCount.incrementAndGet();
+                reply.setDataSize(0);
+                reply.unmarshall(existing.mReply, 0, existing.mReply.length);
+                reply.setDataPosition(0);
+                return existing.mResult;
+            }
+        }
+        // 返回数据无法复制（含有Binder或fd）时等待者各自发出调用
+        if (existing != null) return callSelf(call);
+        mCallCount.incrementAndGet();
+        try {
+            flight.mResult = call.call();
+            flight.mReply = ParcelSpill.marshall(reply);
+            reply.setDataPosition(0);
+            return flight.mResult;
+        } catch (RemoteException | RuntimeException e) {
+            flight.mError = e;
+            throw e;
+        } finally {
+            mFlights.remove(key, flight);
+            flight.mDone.countDown();
+        }
+    }
+
+    private boolean callSelf(@NonNull Call call) throws RemoteException {
+        mCallCount.incrementAndGet();
+        return call.call();
+    }
+
+    interface Call {
+        boolean call() throws RemoteException;
+    }
+
+    private static class Flight {
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        private volatile boolean mResult = false;
+
+        private volatile byte[] mReply = null;
+
+        private volatile Exception mError = null;
+
+        boolean await() {
+            try {
+                mDone.await();
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
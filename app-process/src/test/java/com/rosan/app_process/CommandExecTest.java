@@ -0,0 +1,41 @@
+package com.rosan.app_process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class CommandExecTest {
+    private static Process sh(String command) throws Exception {
+        return new ProcessBuilder("sh", "-c", command).start();
+    }
+
+    @Test
+    public void collectsOutputAndExitCode() throws Exception {
+        ExecResult result = CommandExec.run(sh("cat; echo err >&2; exit 3"),
+                "hello".getBytes(StandardCharsets.UTF_8), 1024, 0);
+        assertEquals(3, result.getExitCode());
+        assertEquals("hello", new String(result.getStdout(), StandardCharsets.UTF_8));
+        assertEquals("err\n", new String(result.getStderr(), StandardCharsets.UTF_8));
+        assertFalse(result.isStdoutTruncated());
+        assertFalse(result.isTimedOut());
+    }
+
+    @Test
+    public void truncatesOutputBeyondLimit() throws Exception {
+        ExecResult result = CommandExec.run(sh("head -c 100000 /dev/zero"), null, 1000, 0);
+        assertEquals(0, result.getExitCode());
+        assertEquals(1000, result.getStdout().length);
+        assertTrue(result.isStdoutTruncated());
+        assertFalse(result.isStderrTruncated());
+    }
+
+    @Test
+    public void killsProcessAfterTimeout() throws Exception {
+        ExecResult result = CommandExec.run(sh("sleep 30"), null, 1024, 200);
+        assertTrue(result.isTimedOut());
+    }
+}
@@ -0,0 +1,77 @@
+package com.rosan.app_process;
+
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.Parcel;
+
+import java.io.FileDescriptor;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * 不依赖Android运行时的IBinder，可手动触发死亡通知
+ * */
+class FakeBinder implements IBinder {
+    private final List<DeathRecipient> mRecipients = new ArrayList<>();
+
+    private volatile boolean mAlive = true;
+
+    void kill() {
+        List<DeathRecipient> recipients;
+        synchronized (mRecipients) {
+            mAlive = false;
+            recipients = new ArrayList<>(mRecipients);
+            mRecipients.clear();
+        }
+        for (DeathRecipient recipient : recipients) {
+            recipient.binderDied();
+        }
+    }
+
+    @Override
+    public String getInterfaceDescriptor() {
+        return null;
+    }
+
+    @Override
+    public boolean pingBinder() {
+        return mAlive;
+    }
+
+    @Override
+    public boolean isBinderAlive() {
+        return mAlive;
+    }
+
+    @Override
+    public IInterface queryLocalInterface(String descriptor) {
+        return null;
+    }
+
+    @Override
+    public void dump(FileDescriptor fd, String[] args) {
+    }
+
+    @Override
+    public void dumpAsync(FileDescriptor fd, String[] args) {
+    }
+
+    @Override
+    public boolean transact(int code, Parcel data, Parcel reply, int flags) {
+        return false;
+    }
+
+    @Override
+    public void linkToDeath(DeathRecipient recipient, int flags) {
+        synchronized (mRecipients) {
+            mRecipients.add(recipient);
+        }
+    }
+
+    @Override
+    public boolean unlinkToDeath(DeathRecipient recipient, int flags) {
+        synchronized (mRecipients) {
+            return mRecipients.remove(recipient);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.rosan.app_process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InFlightRegistryTest {
+    private final InFlightRegistry<FakeBinder> mRegistry = new InFlightRegistry<>(binder -> binder);
+
+    @Test
+    public void concurrentGetsShareOneCreation() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<FakeBinder>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> mRegistry.get("key", () -> {
+                    created.incrementAndGet();
+                    release.await();
+                    return new FakeBinder();
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            FakeBinder first = futures.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<FakeBinder> future : futures) {
+                assertSame(first, future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, created.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void deathRemovesEntry() {
+        FakeBinder first = mRegistry.get("key", FakeBinder::new);
+        assertSame(first, mRegistry.peek("key"));
+        first.kill();
+        assertNull(mRegistry.peek("key"));
+        assertNotSame(first, mRegistry.get("key", FakeBinder::new));
+    }
+
+    @Test
+    public void failedCreationIsRetried() {
+        try {
+            mRegistry.get("key", () -> {
+                throw new IllegalStateException("spawn failed");
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertNull(mRegistry.peek("key"));
+        assertTrue(mRegistry.get("key", FakeBinder::new).isBinderAlive());
+    }
+
+    @Test
+    public void clearWaitsForCreationInProgress() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FakeBinder binder = new FakeBinder();
+        Thread creator = new Thread(() -> mRegistry.get("key", () -> {
+            started.countDown();
+            release.await();
+            return binder;
+        }));
+        creator.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            release.countDown();
+        }).start();
+        List<FakeBinder> values = mRegistry.clear();
+        assertEquals(1, values.size());
+        assertSame(binder, values.get(0));
+        creator.join(5000);
+    }
+}
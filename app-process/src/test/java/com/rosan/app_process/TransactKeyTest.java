@@ -0,0 +1,26 @@
+package com.rosan.app_process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+public class TransactKeyTest {
+    @Test
+    public void equalForSameTargetCodeAndData() {
+        FakeBinder target = new FakeBinder();
+        TransactKey a = new TransactKey(target, 1, new byte[]{1, 2, 3});
+        TransactKey b = new TransactKey(target, 1, new byte[]{1, 2, 3});
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+    }
+
+    @Test
+    public void differsByTargetIdentityCodeOrData() {
+        FakeBinder target = new FakeBinder();
+        TransactKey key = new TransactKey(target, 1, new byte[]{1, 2, 3});
+        assertNotEquals(key, new TransactKey(new FakeBinder(), 1, new byte[]{1, 2, 3}));
+        assertNotEquals(key, new TransactKey(target, 2, new byte[]{1, 2, 3}));
+        assertNotEquals(key, new TransactKey(target, 1, new byte[]{1, 2, 4}));
+    }
+}
@@ -0,0 +1,30 @@
+package com.rosan.app_process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TransactRulesTest {
+    @Test
+    public void getReturnsValueForDescriptorAndCode() {
+        TransactRules<Long> rules = new TransactRules<>();
+        assertTrue(rules.isEmpty());
+        rules.put("android.content.pm.IPackageManager", 3, 1000L);
+        assertFalse(rules.isEmpty());
+        assertEquals(Long.valueOf(1000L), rules.get("android.content.pm.IPackageManager", 3));
+        assertNull(rules.get("android.content.pm.IPackageManager", 4));
+        assertNull(rules.get("android.os.IUserManager", 3));
+        assertNull(rules.get(null, 3));
+    }
+
+    @Test
+    public void putReplacesExistingValue() {
+        TransactRules<Boolean> rules = new TransactRules<>();
+        rules.put("a", 1, true);
+        rules.put("a", 1, false);
+        assertEquals(Boolean.FALSE, rules.get("a", 1));
+    }
+}
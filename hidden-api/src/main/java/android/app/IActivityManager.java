@@ -16,6 +16,9 @@ public interface IActivityManager extends IInterface {
     ContentProviderHolder getContentProviderExternal(String name, int userId, IBinder token)
             throws RemoteException;
 
+    void removeContentProviderExternal(String name, IBinder token)
+            throws RemoteException;
+
     abstract class Stub extends Binder implements IActivityManager {
         public static IActivityManager asInterface(IBinder binder) {
             throw new RuntimeException("Stub");
@@ -1,6 +1,25 @@
 package android.content;
 
+import android.os.Build;
+import android.os.Bundle;
 import android.os.IInterface;
+import android.os.RemoteException;
+
+import androidx.annotation.RequiresApi;
 
 public interface IContentProvider extends IInterface {
+    Bundle call(String callingPkg, String method, String arg, Bundle extras)
+            throws RemoteException;
+
+    @RequiresApi(Build.VERSION_CODES.Q)
+    Bundle call(String callingPkg, String authority, String method, String arg, Bundle extras)
+            throws RemoteException;
+
+    @RequiresApi(Build.VERSION_CODES.R)
+    Bundle call(String callingPkg, String featureId, String authority, String method, String arg, Bundle extras)
+            throws RemoteException;
+
+    @RequiresApi(Build.VERSION_CODES.S)
+    Bundle call(AttributionSource attributionSource, String authority, String method, String arg, Bundle extras)
+            throws RemoteException;
 }
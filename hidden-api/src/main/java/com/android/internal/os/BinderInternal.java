@@ -0,0 +1,7 @@
+package com.android.internal.os;
+
+public class BinderInternal {
+    public static void setMaxThreads(int numThreads) {
+        throw new RuntimeException("Stub!");
+    }
+}